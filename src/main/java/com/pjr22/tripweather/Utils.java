@@ -1,14 +1,28 @@
 package com.pjr22.tripweather;
 
+import java.time.DateTimeException;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class Utils {
 
    public static final DateTimeFormatter date_time_formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
    public static final String default_timezone_name = "America/Los_Angeles";
+   public static final ZoneId default_zone = ZoneId.of(default_timezone_name);
+
+   // Only valid names are cached, so the map is bounded by the size of the tz database
+   private static final Map<String, ZoneId> zone_ids = new ConcurrentHashMap<>();
+   private static final Map<ZoneId, ZoneRules> zone_rules = new ConcurrentHashMap<>();
 
    public static ZonedDateTime getZonedDateTime(String date, String time, ZoneId zone) {
       LocalDateTime localDateTime = LocalDateTime.parse(String.format("%s %s", date, time), date_time_formatter);
@@ -16,25 +30,35 @@ public class Utils {
    }
 
    /**
-    * Convert datetime string from one timezone to another using LocationService
-    * timezone data
+    * Resolve a timezone name, caching the result
+    * @return The zone, or the default zone if the name is blank or unknown
     */
-   public static String convertDateTime(String dateTimeStr, String fromTimezone, String toTimezone) {
-      try {
-         LocalDateTime localDateTime = LocalDateTime.parse(dateTimeStr, date_time_formatter);
-
-         ZoneId fromZoneId = ZoneId.of(fromTimezone);
-         ZoneId toZoneId = ZoneId.of(toTimezone);
+   public static ZoneId zoneId(String timezoneName) {
+      if (timezoneName == null || timezoneName.isBlank()) {
+         return default_zone;
+      }
+      ZoneId zone = zone_ids.computeIfAbsent(timezoneName, name -> {
+         try {
+            return ZoneId.of(name);
+         } catch (DateTimeException e) {
+            // Not cached, so this is seen on every request carrying the name
+            log.debug("Unknown timezone {}, using {}", name, default_timezone_name);
+            return null;
+         }
+      });
+      return zone != null ? zone : default_zone;
+   }
 
-         ZonedDateTime fromZonedDateTime = localDateTime.atZone(fromZoneId);
-         ZonedDateTime toZonedDateTime = fromZonedDateTime.withZoneSameInstant(toZoneId);
+   public static ZoneRules zoneRules(ZoneId zone) {
+      return zone_rules.computeIfAbsent(zone, ZoneId::getRules);
+   }
 
-         return toZonedDateTime.format(date_time_formatter);
-      } catch (Exception e) {
-         System.err
-               .println("Error converting datetime from " + fromTimezone + " to " + toTimezone + ": " + e.getMessage());
-         return dateTimeStr; // Return original if conversion fails
-      }
+   /**
+    * Format an instant as local time in a zone
+    */
+   public static String formatEpochSecond(long epochSecond, ZoneId zone) {
+      ZoneOffset offset = zoneRules(zone).getOffset(Instant.ofEpochSecond(epochSecond));
+      return LocalDateTime.ofEpochSecond(epochSecond, 0, offset).format(date_time_formatter);
    }
 
 }
@@ -0,0 +1,133 @@
+package com.pjr22.tripweather.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker for one upstream API. After a run of consecutive failures the
+ * circuit opens and calls fail immediately instead of waiting on a struggling
+ * upstream. Once the open period has passed a single trial call is let through;
+ * if it succeeds the circuit closes again, otherwise it stays open for another period.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Predicate<RuntimeException> isFailure;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long rejected;
+    private long timesOpened;
+
+    /**
+     * @param name Name of the upstream, used in messages and stats
+     * @param failureThreshold Consecutive failures that open the circuit
+     * @param openDuration How long the circuit stays open before a trial call
+     * @param isFailure Which exceptions count against the upstream's health; others
+     *                  (e.g. a 404 for a bad request) are passed on without counting
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration,
+            Predicate<RuntimeException> isFailure) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openDuration.toMillis();
+        this.isFailure = isFailure;
+    }
+
+    /**
+     * Run a call through the breaker
+     * @throws CircuitOpenException If the circuit is open and the call was not attempted
+     */
+    public <T> T execute(Supplier<T> call) {
+        acquire();
+        try {
+            T result = call.get();
+            recordSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (isFailure.test(e)) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+            throw e;
+        } catch (Error e) {
+            recordFailure();
+            throw e;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized CircuitStats stats() {
+        Instant retryAt = state == State.OPEN ? Instant.ofEpochMilli(openedAt + openMillis) : null;
+        return new CircuitStats(name, state, consecutiveFailures, timesOpened, rejected, retryAt);
+    }
+
+    private synchronized void acquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return;
+        }
+        rejected++;
+        throw new CircuitOpenException(name + " is temporarily unavailable");
+    }
+
+    private synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuit for {} closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            timesOpened++;
+            log.warn("Circuit for {} opened after {} consecutive failures", name, consecutiveFailures);
+        }
+    }
+
+    /**
+     * Thrown instead of calling the upstream while the circuit is open
+     */
+    public static class CircuitOpenException extends RuntimeException {
+
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Point-in-time state of a breaker. retryAt is when the next trial call is allowed
+     * and is only set while the circuit is open.
+     */
+    public record CircuitStats(String upstream, State state, int consecutiveFailures, long timesOpened,
+            long rejected, Instant retryAt) {
+    }
+}
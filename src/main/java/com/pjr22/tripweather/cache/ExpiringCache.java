@@ -0,0 +1,160 @@
+package com.pjr22.tripweather.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small in-process cache with a per-entry time to live and a bounded size.
+ * When the size bound is reached the least recently used entry is evicted.
+ * Hit, miss and eviction counts are tracked so callers can report them.
+ */
+public class ExpiringCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final Duration defaultTtl;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ExpiringCache(String name, int maxSize, Duration defaultTtl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.defaultTtl = defaultTtl;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a cached value
+     * @param key Cache key
+     * @return The value, or null if absent or expired
+     */
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a value using the cache's default time to live
+     */
+    public void put(K key, V value) {
+        put(key, value, defaultTtl);
+    }
+
+    /**
+     * Store a value with an explicit time to live
+     */
+    public void put(K key, V value, Duration ttl) {
+        if (value == null || ttl == null || ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    /**
+     * Keys whose entries are still valid but will expire within the given window.
+     * Iterating does not count as access, so the LRU order is left unchanged.
+     */
+    public List<K> keysExpiringWithin(Duration window) {
+        long now = System.currentTimeMillis();
+        long horizon = now + window.toMillis();
+        List<K> keys = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                long expiresAt = entry.getValue().expiresAt;
+                if (expiresAt > now && expiresAt <= horizon) {
+                    keys.add(entry.getKey());
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Snapshot of the values that have not expired, without affecting LRU order
+     */
+    public List<V> values() {
+        long now = System.currentTimeMillis();
+        List<V> values = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry<V> entry : entries.values()) {
+                if (entry.expiresAt > now) {
+                    values.add(entry.value);
+                }
+            }
+        }
+        return values;
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(name, size(), maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    /**
+     * Point-in-time snapshot of a cache's counters
+     */
+    public record CacheStats(String name, int size, int maxSize, long hits, long misses, long evictions) {
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
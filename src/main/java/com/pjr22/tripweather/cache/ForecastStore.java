@@ -0,0 +1,121 @@
+package com.pjr22.tripweather.cache;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.pjr22.tripweather.model.ForecastDictionary;
+import com.pjr22.tripweather.model.ForecastIndex;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory store of parsed gridpoint forecasts, keyed by forecast URL. Forecasts are
+ * held as compact {@link ForecastIndex} columns that share one string dictionary, and
+ * each gridpoint keeps at most a configured number of periods, so the heap used per
+ * gridpoint is bounded and can be reported. Misses fall through to the shared
+ * {@link PersistentWeatherCache} before the caller goes upstream.
+ */
+@Component
+@Slf4j
+public class ForecastStore {
+
+    private final ExpiringCache<String, ForecastIndex> forecasts;
+    private final ForecastDictionary dictionary = new ForecastDictionary();
+    private final Duration defaultTtl;
+    private final int maxPeriods;
+    private final PersistentWeatherCache persistentCache;
+
+    public ForecastStore(
+            PersistentWeatherCache persistentCache,
+            @Value("${weather.forecast.cache.default-ttl-minutes:15}") long defaultTtlMinutes,
+            @Value("${weather.forecast.cache.max-size:2000}") int maxSize,
+            @Value("${weather.forecast.max-periods:168}") int maxPeriods) {
+        this.defaultTtl = Duration.ofMinutes(defaultTtlMinutes);
+        this.forecasts = new ExpiringCache<>("weather-forecast", maxSize, defaultTtl);
+        this.maxPeriods = maxPeriods;
+        this.persistentCache = persistentCache;
+    }
+
+    /**
+     * Decode a forecast response into the store's compact format. The result is not
+     * stored; call {@link #put(String, ForecastIndex, Duration)} for that.
+     */
+    public ForecastIndex read(JsonParser parser) throws IOException {
+        return ForecastIndex.read(parser, dictionary, maxPeriods);
+    }
+
+    /**
+     * Get a forecast from memory, falling back to the shared database tier
+     * @return The forecast, or null if neither tier has a valid copy
+     */
+    public ForecastIndex get(String forecastUrl) {
+        ForecastIndex forecast = forecasts.get(forecastUrl);
+        if (forecast != null) {
+            return forecast;
+        }
+
+        PersistentWeatherCache.StoredValue stored = persistentCache.getForecast(forecastUrl);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            forecast = ForecastIndex.fromBytes(stored.payload(), dictionary);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable stored forecast for {}: {}", forecastUrl, e.getMessage());
+            return null;
+        }
+        forecasts.put(forecastUrl, forecast, stored.remainingTtl());
+        return forecast;
+    }
+
+    /**
+     * Store a forecast in memory and in the shared database tier
+     */
+    public void put(String forecastUrl, ForecastIndex forecast, Duration ttl) {
+        forecasts.put(forecastUrl, forecast, ttl);
+        persistentCache.putForecast(forecastUrl, forecast.toBytes(), ttl);
+    }
+
+    public List<String> keysExpiringWithin(Duration window) {
+        return forecasts.keysExpiringWithin(window);
+    }
+
+    /**
+     * Lifetime used when the upstream response carries no caching headers
+     */
+    public Duration getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public ExpiringCache.CacheStats cacheStats() {
+        return forecasts.stats();
+    }
+
+    /**
+     * Count the stored gridpoints and periods and estimate the heap they use
+     */
+    public StoreStats stats() {
+        List<ForecastIndex> snapshot = forecasts.values();
+        long periods = 0;
+        long forecastBytes = 0;
+        for (ForecastIndex forecast : snapshot) {
+            periods += forecast.size();
+            forecastBytes += forecast.estimatedHeapBytes();
+        }
+        long dictionaryBytes = dictionary.estimatedHeapBytes();
+        return new StoreStats(snapshot.size(), periods, maxPeriods, dictionary.size(),
+                dictionary.overflowCount(), forecastBytes, dictionaryBytes, forecastBytes + dictionaryBytes);
+    }
+
+    /**
+     * Point-in-time size of the store
+     */
+    public record StoreStats(int gridpoints, long periods, int maxPeriodsPerGridpoint, int dictionaryEntries,
+            long dictionaryOverflows, long forecastBytes, long dictionaryBytes, long estimatedHeapBytes) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.pjr22.tripweather.cache;
+
+/**
+ * Geohash encoding, used to key caches by the cell a point falls in rather than its
+ * exact coordinates. Each character adds 5 bits, alternating longitude and latitude;
+ * at precision 8 a cell is about 38 x 19 meters, at 7 about 153 x 153 meters.
+ */
+public final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    public static final int MAX_PRECISION = 12;
+
+    private Geohash() {
+    }
+
+    /**
+     * @param precision Number of characters, 1 to 12
+     * @return The geohash of the cell containing the point
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Geohash precision must be between 1 and " + MAX_PRECISION);
+        }
+
+        double minLatitude = -90.0, maxLatitude = 90.0;
+        double minLongitude = -180.0, maxLongitude = 180.0;
+        char[] hash = new char[precision];
+        boolean even = true; // the first bit is longitude
+        int bits = 0;
+        int value = 0;
+        int length = 0;
+
+        while (length < precision) {
+            if (even) {
+                double mid = (minLongitude + maxLongitude) / 2;
+                if (longitude >= mid) {
+                    value = (value << 1) | 1;
+                    minLongitude = mid;
+                } else {
+                    value <<= 1;
+                    maxLongitude = mid;
+                }
+            } else {
+                double mid = (minLatitude + maxLatitude) / 2;
+                if (latitude >= mid) {
+                    value = (value << 1) | 1;
+                    minLatitude = mid;
+                } else {
+                    value <<= 1;
+                    maxLatitude = mid;
+                }
+            }
+            even = !even;
+
+            if (++bits == 5) {
+                hash[length++] = BASE32[value];
+                bits = 0;
+                value = 0;
+            }
+        }
+        return new String(hash);
+    }
+}
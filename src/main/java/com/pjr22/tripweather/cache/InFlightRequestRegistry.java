@@ -0,0 +1,95 @@
+package com.pjr22.tripweather.cache;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of upstream calls that are currently in flight. When several threads make
+ * the same call at the same time, only the first one goes upstream and the others
+ * wait for and share its result. Counts of executed and coalesced calls are kept per
+ * upstream so the saved API quota can be reported.
+ */
+@Component
+public class InFlightRequestRegistry {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Run an upstream call, or join an identical call that is already running
+     * @param upstream Name of the upstream service, e.g. "weather.gov"
+     * @param key Normalized description of the request
+     * @param call The upstream call
+     * @return The call's result, shared with any concurrent identical callers
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String upstream, String key, Supplier<T> call) {
+        Counters upstreamCounters = counters.computeIfAbsent(upstream, name -> new Counters());
+        String flightKey = upstream + '|' + key;
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            upstreamCounters.coalesced.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        upstreamCounters.executed.increment();
+        try {
+            T result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    public List<InFlightStats> getStats() {
+        return counters.entrySet().stream()
+                .map(entry -> new InFlightStats(entry.getKey(),
+                        entry.getValue().executed.sum(),
+                        entry.getValue().coalesced.sum(),
+                        countInFlight(entry.getKey())))
+                .sorted(Comparator.comparing(InFlightStats::upstream))
+                .toList();
+    }
+
+    private int countInFlight(String upstream) {
+        String prefix = upstream + '|';
+        int count = 0;
+        for (String key : inFlight.keySet()) {
+            if (key.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class Counters {
+        private final LongAdder executed = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+    }
+
+    /**
+     * Counters for one upstream. Coalesced calls are upstream requests that were saved.
+     */
+    public record InFlightStats(String upstream, long executed, long coalesced, int inFlight) {
+    }
+}
@@ -0,0 +1,220 @@
+package com.pjr22.tripweather.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.pjr22.tripweather.repository.WeatherCacheRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Second cache tier in PostgreSQL, consulted after the in-process caches and before
+ * api.weather.gov. Results survive restarts and are shared by every instance, so a
+ * rolling deploy does not re-fetch everything upstream. The table holds nothing that
+ * cannot be fetched again, so it is made UNLOGGED to avoid WAL traffic.
+ *
+ * The database is an optimization only: on any error the tier is bypassed for a
+ * while and callers carry on as if it were a miss.
+ *
+ * The keys of the live entries, without their payloads, are kept in memory and
+ * reloaded periodically to pick up entries written by other instances. A key that is
+ * not known there is a miss without a query, and the stats are read from it instead
+ * of counting the table. Until the keys have been loaded every lookup queries the table.
+ */
+@Component
+@Slf4j
+public class PersistentWeatherCache {
+
+    private static final String POINTS_PREFIX = "points:";
+    private static final String FORECAST_PREFIX = "forecast:";
+
+    private final WeatherCacheRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final boolean unlogged;
+    private final long retryAfterMillis;
+    private volatile long unavailableUntil;
+    // Expiry time in epoch milliseconds of each stored key; null until first loaded
+    private volatile Map<String, Long> storedKeys;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PersistentWeatherCache(
+            WeatherCacheRepository repository,
+            JdbcTemplate jdbcTemplate,
+            @Value("${weather.cache.persistent.enabled:true}") boolean enabled,
+            @Value("${weather.cache.persistent.unlogged:true}") boolean unlogged,
+            @Value("${weather.cache.persistent.retry-after-seconds:60}") long retryAfterSeconds) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.unlogged = unlogged;
+        this.retryAfterMillis = retryAfterSeconds * 1000;
+    }
+
+    /**
+     * The table itself is created by Hibernate with the other entities; switch it to
+     * UNLOGGED the first time the application sees it as a regular table.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled || !unlogged) {
+            return;
+        }
+        guarded(() -> {
+            String persistence = jdbcTemplate.queryForObject(
+                    "SELECT relpersistence FROM pg_class WHERE oid = to_regclass('weather_cache')", String.class);
+            if ("p".equals(persistence)) {
+                jdbcTemplate.execute("ALTER TABLE weather_cache SET UNLOGGED");
+                log.info("Converted weather_cache to an UNLOGGED table");
+            }
+            return null;
+        }, null);
+    }
+
+    /**
+     * Get the forecast URL stored for an NWS points lookup
+     */
+    public StoredValue getPoints(String pointsKey) {
+        return get(POINTS_PREFIX + pointsKey);
+    }
+
+    public void putPoints(String pointsKey, String forecastUrl, Duration ttl) {
+        put(POINTS_PREFIX + pointsKey, forecastUrl.getBytes(StandardCharsets.UTF_8), ttl);
+    }
+
+    /**
+     * Get a serialized forecast stored by this or another instance
+     */
+    public StoredValue getForecast(String forecastUrl) {
+        return get(FORECAST_PREFIX + forecastUrl);
+    }
+
+    public void putForecast(String forecastUrl, byte[] forecast, Duration ttl) {
+        put(FORECAST_PREFIX + forecastUrl, forecast, ttl);
+    }
+
+    @Scheduled(fixedDelayString = "${weather.cache.persistent.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        Integer deleted = guarded(() -> repository.deleteExpired(Instant.now()), 0);
+        if (deleted > 0) {
+            log.info("Purged {} expired weather cache entries", deleted);
+        }
+    }
+
+    /**
+     * Reload the keys of the live entries, including those other instances have written
+     * since the last load
+     */
+    @Scheduled(fixedDelayString = "${weather.cache.persistent.key-refresh-interval-ms:60000}")
+    public void refreshStoredKeys() {
+        if (!enabled) {
+            return;
+        }
+        List<WeatherCacheRepository.StoredKey> keys = guarded(() -> repository.findByExpiresAtAfter(Instant.now()), null);
+        if (keys == null) {
+            return;
+        }
+        Map<String, Long> loaded = new ConcurrentHashMap<>(Math.max(16, keys.size() * 2));
+        for (WeatherCacheRepository.StoredKey key : keys) {
+            loaded.put(key.getCacheKey(), key.getExpiresAt().toEpochMilli());
+        }
+        // Keep what was written here while the keys were loading
+        Map<String, Long> previous = storedKeys;
+        if (previous != null) {
+            long now = System.currentTimeMillis();
+            previous.forEach((key, expiresAt) -> {
+                if (expiresAt > now) {
+                    loaded.merge(key, expiresAt, Math::max);
+                }
+            });
+        }
+        storedKeys = loaded;
+    }
+
+    /**
+     * Hit/miss counters for this tier. The size is the number of live keys as of the
+     * last reload plus those written here since, and -1 until the keys have been
+     * loaded; the table has no size bound.
+     */
+    public ExpiringCache.CacheStats stats() {
+        Map<String, Long> keys = storedKeys;
+        int size = !enabled ? 0 : keys == null ? -1 : keys.size();
+        return new ExpiringCache.CacheStats("weather-persistent", size, 0, hits.get(), misses.get(), 0);
+    }
+
+    private StoredValue get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Instant now = Instant.now();
+        Map<String, Long> keys = storedKeys;
+        if (keys != null) {
+            Long expiresAt = keys.get(key);
+            if (expiresAt == null || expiresAt <= now.toEpochMilli()) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        StoredValue value = guarded(() -> repository.findByCacheKeyAndExpiresAtAfter(key, now)
+                .map(entry -> new StoredValue(entry.getPayload(), Duration.between(now, entry.getExpiresAt())))
+                .orElse(null), null);
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    private void put(String key, byte[] payload, Duration ttl) {
+        if (!enabled || ttl == null || ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        Instant expiresAt = Instant.now().plus(ttl);
+        Boolean stored = guarded(() -> {
+            repository.upsert(key, payload, expiresAt);
+            return true;
+        }, false);
+        Map<String, Long> keys = storedKeys;
+        if (stored && keys != null) {
+            keys.put(key, expiresAt.toEpochMilli());
+        }
+    }
+
+    private <T> T guarded(Supplier<T> action, T fallback) {
+        if (System.currentTimeMillis() < unavailableUntil) {
+            return fallback;
+        }
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            unavailableUntil = System.currentTimeMillis() + retryAfterMillis;
+            log.warn("Weather cache database unavailable, bypassing it for {}s: {}",
+                    retryAfterMillis / 1000, e.getMessage());
+            return fallback;
+        }
+    }
+
+    /**
+     * A stored payload and how much longer it may be used
+     */
+    public record StoredValue(byte[] payload, Duration remainingTtl) {
+
+        public String asString() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+}
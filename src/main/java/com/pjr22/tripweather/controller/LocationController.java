@@ -1,6 +1,7 @@
 package com.pjr22.tripweather.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.pjr22.tripweather.cache.ExpiringCache;
 import com.pjr22.tripweather.model.LocationData;
 import com.pjr22.tripweather.service.LocationService;
 
@@ -9,6 +10,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/location")
 public class LocationController {
@@ -39,5 +42,10 @@ public class LocationController {
     public JsonNode searchLocations(@RequestParam String query) {
         return locationService.searchLocations(query);
     }
+
+    @GetMapping("/cache/stats")
+    public List<ExpiringCache.CacheStats> getCacheStats() {
+        return locationService.getCacheStats();
+    }
     
 }
@@ -1,6 +1,8 @@
 package com.pjr22.tripweather.controller;
 
 import com.pjr22.tripweather.Utils;
+import com.pjr22.tripweather.cache.ExpiringCache;
+import com.pjr22.tripweather.dto.CoordinateRequest;
 import com.pjr22.tripweather.model.LocationData;
 import com.pjr22.tripweather.model.RouteData;
 import com.pjr22.tripweather.service.RouteService;
@@ -10,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.time.ZoneId;
@@ -22,6 +25,14 @@ import java.util.ArrayList;
 @Slf4j
 public class RouteController {
 
+    // ?format=polyline returns the geometry as an encoded polyline instead of coordinates
+    // ?tolerance=<meters> drops vertices closer than that to the line before the response is sent.
+    // Without it the full geometry is returned with detailLevels, which the map uses to pick
+    // a level of detail per zoom without asking again.
+    private static final String FORMAT_POLYLINE = "polyline";
+    private static final int POLYLINE_PRECISION = 5;
+    private static final int ELEVATION_PRECISION = 1;
+
     private final RouteService routeService;
 
     public RouteController(RouteService routeService) {
@@ -36,6 +47,19 @@ public class RouteController {
         return routeService.snapToLocation(lat, lon);
     }
 
+    /**
+     * Snap many points in one request. Each feature's source_id is the index of the point
+     * it was snapped from; points that could not be snapped are left out.
+     */
+    @PostMapping("/snap/batch")
+    public ResponseEntity<LocationData> snapToLocations(@RequestBody List<CoordinateRequest> points) {
+        double[][] coordinates = toCoordinates(points);
+        if (coordinates == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(routeService.snapToLocations(coordinates[0], coordinates[1]));
+    }
+
     @GetMapping("/elevation")
     public Double getElevationAtPoint(
             @RequestParam double lat,
@@ -44,8 +68,44 @@ public class RouteController {
         return routeService.getElevation(lat, lon);
     }
 
+    /**
+     * Elevations for many points in one request, in the order given; null where unknown
+     */
+    @PostMapping("/elevation/batch")
+    public ResponseEntity<List<Double>> getElevations(@RequestBody List<CoordinateRequest> points) {
+        double[][] coordinates = toCoordinates(points);
+        if (coordinates == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(Arrays.asList(routeService.getElevations(coordinates[0], coordinates[1])));
+    }
+
+    /**
+     * Split batch points into latitude and longitude arrays
+     * @return The arrays, or null if the list is empty or has an incomplete point
+     */
+    private double[][] toCoordinates(List<CoordinateRequest> points) {
+        if (points == null || points.isEmpty()) {
+            return null;
+        }
+
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            CoordinateRequest point = points.get(i);
+            if (point == null || point.getLatitude() == null || point.getLongitude() == null) {
+                return null;
+            }
+            latitudes[i] = point.getLatitude();
+            longitudes[i] = point.getLongitude();
+        }
+        return new double[][] { latitudes, longitudes };
+    }
+
     @PostMapping("/calculate")
-    public ResponseEntity<RouteData> calculateRoute(@RequestBody List<Map<String, Object>> waypoints) {
+    public ResponseEntity<RouteData> calculateRoute(@RequestBody List<Map<String, Object>> waypoints,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) Double tolerance) {
         if (waypoints == null || waypoints.isEmpty()) {
            return ResponseEntity.badRequest().build();
         }
@@ -56,7 +116,7 @@ public class RouteController {
             List<Integer> durations = new ArrayList<>();
 
             int i = 0;
-            ZonedDateTime departureDateTime = ZonedDateTime.now(ZoneId.of(Utils.default_timezone_name));
+            ZonedDateTime departureDateTime = ZonedDateTime.now(Utils.default_zone);
             for (Map<String, Object> wp : waypoints) {
                 Double lat = ((Number) wp.get("latitude")).doubleValue();
                 Double lng = ((Number) wp.get("longitude")).doubleValue();
@@ -68,7 +128,7 @@ public class RouteController {
                    try {
                       String date = (String) wp.get("date");
                       String time = (String) wp.get("time");
-                      ZoneId zone = timezoneName != null && !timezoneName.isBlank() ? ZoneId.of(timezoneName) : ZoneId.of(Utils.default_timezone_name);
+                      ZoneId zone = Utils.zoneId(timezoneName);
                       if (date != null && !date.isBlank() && time != null && !time.isBlank()) {
                          departureDateTime = Utils.getZonedDateTime(date, time, zone);
                       } else {
@@ -91,10 +151,13 @@ public class RouteController {
                 durations.add(duration);
             }
 
-            RouteData routeData = routeService.calculateRoute(routeWaypoints, departureDateTime, durations);
+            RouteData routeData = routeService.calculateRoute(routeWaypoints, departureDateTime, durations, tolerance);
 
             // Check if route calculation was successful
             if (routeData.getGeometry() != null && !routeData.getGeometry().isEmpty()) {
+                if (FORMAT_POLYLINE.equalsIgnoreCase(format)) {
+                    routeData.encodeGeometry(POLYLINE_PRECISION, ELEVATION_PRECISION);
+                }
                 return ResponseEntity.ok(routeData);
             } else {
                 // Return empty route with error status
@@ -111,6 +174,11 @@ public class RouteController {
         }
     }
 
+    @GetMapping("/cache/stats")
+    public List<ExpiringCache.CacheStats> getCacheStats() {
+        return routeService.getCacheStats();
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("Route service is healthy");
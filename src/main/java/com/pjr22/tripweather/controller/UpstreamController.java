@@ -0,0 +1,43 @@
+package com.pjr22.tripweather.controller;
+
+import java.util.List;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pjr22.tripweather.cache.CircuitBreaker;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.pjr22.tripweather.service.WeatherService;
+
+/**
+ * Controller for reporting on calls made to upstream APIs
+ */
+@RestController
+@RequestMapping("/api/upstream")
+public class UpstreamController {
+
+    private final InFlightRequestRegistry inFlightRequests;
+    private final WeatherService weatherService;
+
+    public UpstreamController(InFlightRequestRegistry inFlightRequests, WeatherService weatherService) {
+        this.inFlightRequests = inFlightRequests;
+        this.weatherService = weatherService;
+    }
+
+    /**
+     * Executed and coalesced call counts per upstream API
+     */
+    @GetMapping("/stats")
+    public List<InFlightRequestRegistry.InFlightStats> getStats() {
+        return inFlightRequests.getStats();
+    }
+
+    /**
+     * Circuit breaker state per upstream API
+     */
+    @GetMapping("/circuits")
+    public List<CircuitBreaker.CircuitStats> getCircuits() {
+        return List.of(weatherService.getCircuitStats());
+    }
+}
@@ -1,20 +1,39 @@
 package com.pjr22.tripweather.controller;
 
+import com.pjr22.tripweather.cache.ExpiringCache;
+import com.pjr22.tripweather.cache.ForecastStore;
+import com.pjr22.tripweather.dto.DepartureWindowRequest;
+import com.pjr22.tripweather.dto.RouteWeatherTimelineRequest;
+import com.pjr22.tripweather.dto.WeatherForecastRequest;
+import com.pjr22.tripweather.model.DepartureOption;
+import com.pjr22.tripweather.model.RouteWeatherSample;
 import com.pjr22.tripweather.model.WeatherData;
+import com.pjr22.tripweather.service.DepartureWindowService;
+import com.pjr22.tripweather.service.RouteWeatherService;
 import com.pjr22.tripweather.service.WeatherService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/weather")
 public class WeatherController {
 
     private final WeatherService weatherService;
+    private final RouteWeatherService routeWeatherService;
+    private final DepartureWindowService departureWindowService;
 
-    public WeatherController(WeatherService weatherService) {
+    public WeatherController(WeatherService weatherService, RouteWeatherService routeWeatherService,
+            DepartureWindowService departureWindowService) {
         this.weatherService = weatherService;
+        this.routeWeatherService = routeWeatherService;
+        this.departureWindowService = departureWindowService;
     }
 
     @GetMapping("/forecast")
@@ -26,4 +45,55 @@ public class WeatherController {
         
         return weatherService.getWeatherForecast(latitude, longitude, date, time);
     }
+
+    @PostMapping("/forecast/batch")
+    public ResponseEntity<List<WeatherData>> getWeatherForecasts(@RequestBody List<WeatherForecastRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(weatherService.getWeatherForecasts(requests));
+    }
+
+    @PostMapping("/timeline")
+    public ResponseEntity<List<RouteWeatherSample>> getWeatherTimeline(@RequestBody RouteWeatherTimelineRequest request) {
+        if (request == null || request.getRoute() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            return ResponseEntity.ok(routeWeatherService.getWeatherTimeline(
+                    request.getRoute(), request.getIntervalKm(), request.getIntervalMinutes()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Rank departure times for a calculated route, best first, by the weather along it
+     */
+    @PostMapping("/departures")
+    public ResponseEntity<List<DepartureOption>> getDepartureOptions(@RequestBody DepartureWindowRequest request) {
+        if (request == null || request.getRoute() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            return ResponseEntity.ok(departureWindowService.rankDepartures(request.getRoute(),
+                    request.getWindowHours(), request.getStepMinutes(), request.getIntervalKm(),
+                    request.getLimit()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/cache/stats")
+    public List<ExpiringCache.CacheStats> getCacheStats() {
+        return weatherService.getCacheStats();
+    }
+
+    @GetMapping("/cache/forecasts")
+    public ForecastStore.StoreStats getForecastStoreStats() {
+        return weatherService.getForecastStoreStats();
+    }
 }
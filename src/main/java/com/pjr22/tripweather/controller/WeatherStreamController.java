@@ -0,0 +1,79 @@
+package com.pjr22.tripweather.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.pjr22.tripweather.dto.WeatherForecastEvent;
+import com.pjr22.tripweather.dto.WeatherForecastRequest;
+import com.pjr22.tripweather.model.WeatherData;
+import com.pjr22.tripweather.service.WeatherService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Server-Sent Events endpoint that streams each forecast as soon as it resolves, so
+ * one slow gridpoint does not hold up the results for the rest of the route
+ */
+@RestController
+@RequestMapping("/api/weather")
+@Slf4j
+public class WeatherStreamController {
+
+    private static final long STREAM_TIMEOUT_MS = 120_000;
+
+    private final WeatherService weatherService;
+
+    public WeatherStreamController(WeatherService weatherService) {
+        this.weatherService = weatherService;
+    }
+
+    /**
+     * Stream forecasts for a list of locations. Each result is sent as a "forecast"
+     * event carrying the request index, followed by one "complete" event.
+     */
+    @PostMapping(path = "/forecast/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamWeatherForecasts(@RequestBody List<WeatherForecastRequest> requests) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        if (requests == null || requests.isEmpty()) {
+            sendEvent(emitter, "complete", Map.of("count", 0));
+            emitter.complete();
+            return emitter;
+        }
+
+        List<CompletableFuture<WeatherData>> forecasts = weatherService.startWeatherForecasts(requests);
+        List<CompletableFuture<Void>> sent = new ArrayList<>(forecasts.size());
+        for (int i = 0; i < forecasts.size(); i++) {
+            int index = i;
+            sent.add(forecasts.get(i).thenAccept(weather ->
+                    sendEvent(emitter, "forecast", new WeatherForecastEvent(index, weather))));
+        }
+
+        // Wait on the sends, not the forecasts, so "complete" is always the last event
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> {
+                    sendEvent(emitter, "complete", Map.of("count", forecasts.size()));
+                    emitter.complete();
+                });
+
+        return emitter;
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away or the stream timed out; remaining results are dropped
+            log.debug("Could not send {} event: {}", name, e.getMessage());
+        }
+    }
+}
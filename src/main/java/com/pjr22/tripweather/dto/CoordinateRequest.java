@@ -0,0 +1,17 @@
+package com.pjr22.tripweather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One point of a batch request
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CoordinateRequest {
+
+    private Double latitude;
+    private Double longitude;
+}
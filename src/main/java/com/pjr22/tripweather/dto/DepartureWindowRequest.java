@@ -0,0 +1,18 @@
+package com.pjr22.tripweather.dto;
+
+import com.pjr22.tripweather.model.RouteData;
+
+import lombok.Data;
+
+/**
+ * Request to rank departure times for a calculated route by the weather along it
+ */
+@Data
+public class DepartureWindowRequest {
+
+    private RouteData route; // as returned by /api/route/calculate; its departure starts the window
+    private Integer windowHours; // consider departures up to this many hours after the route's departure
+    private Integer stepMinutes; // minutes between candidate departures
+    private Double intervalKm; // sample the route every N km
+    private Integer limit; // number of options to return
+}
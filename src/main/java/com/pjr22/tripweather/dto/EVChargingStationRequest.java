@@ -1,7 +1,9 @@
 package com.pjr22.tripweather.dto;
 
-import java.util.List;
 import java.util.Map;
+
+import com.pjr22.tripweather.model.RouteGeometry;
+
 import lombok.Data;
 
 /**
@@ -10,7 +12,7 @@ import lombok.Data;
 @Data
 public class EVChargingStationRequest {
     
-    private List<List<Double>> route; // List of [longitude, latitude] pairs
+    private RouteGeometry route; // [longitude, latitude] pairs, elevation ignored
     
     // Additional parameters to pass to the NREL API
     private Map<String, Object> parameters;
@@ -0,0 +1,16 @@
+package com.pjr22.tripweather.dto;
+
+import com.pjr22.tripweather.model.RouteData;
+
+import lombok.Data;
+
+/**
+ * Request for a weather timeline along a calculated route
+ */
+@Data
+public class RouteWeatherTimelineRequest {
+
+    private RouteData route; // as returned by /api/route/calculate
+    private Double intervalKm; // sample every N km along the route
+    private Integer intervalMinutes; // or every N minutes of driving, if set
+}
@@ -0,0 +1,19 @@
+package com.pjr22.tripweather.dto;
+
+import com.pjr22.tripweather.model.WeatherData;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One streamed forecast result, tagged with the position of its request
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeatherForecastEvent {
+
+    private Integer index;
+    private WeatherData weather;
+}
@@ -0,0 +1,19 @@
+package com.pjr22.tripweather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of a batch weather forecast request
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeatherForecastRequest {
+
+    private Double latitude;
+    private Double longitude;
+    private String date; // yyyy-MM-dd
+    private String time; // HH:mm
+}
@@ -0,0 +1,23 @@
+package com.pjr22.tripweather.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One candidate departure time for a route and how good the weather along it is
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DepartureOption {
+
+    private Integer rank; // 1 is the best option
+    private String departureTime; // yyyy-MM-dd HH:mm at the first waypoint
+    private String arrivalTime; // yyyy-MM-dd HH:mm at the last waypoint
+    private String departure; // ISO-8601 instant
+    private Double score; // average weather cost per sample, lower is better
+    private Integer maxPrecipitationProbability; // worst chance of precipitation along the route
+    private String worstCondition; // forecast at the sample with the highest cost
+    private Integer samplesWithoutForecast; // samples beyond the forecast horizon, not scored
+}
@@ -0,0 +1,100 @@
+package com.pjr22.tripweather.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shared table of the short strings that repeat across forecast periods, such as
+ * "Mostly Sunny", "NW" or "5 to 10 mph". Each distinct string is stored once and
+ * periods refer to it by a 16-bit code. Code 0 always means null.
+ *
+ * The table is never pruned. Once it is full, strings it does not know are kept by
+ * the forecast that uses them instead, under codes from MAX_CODES up.
+ */
+@Slf4j
+public final class ForecastDictionary {
+
+    /** Codes are stored as unsigned 16-bit values; those from here up are not shared */
+    public static final int MAX_CODES = 0xF000;
+    /** Returned by {@link #encode(String)} when a string is new and the table is full */
+    public static final int FULL = -1;
+
+    private final ConcurrentHashMap<String, Short> codes = new ConcurrentHashMap<>();
+    private final AtomicLong overflows = new AtomicLong();
+    private volatile String[] values = new String[256];
+    private int size = 1;
+
+    /**
+     * Get the code for a string, adding it to the table if it is new
+     * @param value The string, may be null
+     * @return Code for the string, 0 for null, or {@link #FULL} when the string is new
+     *         and the table has no room for it
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Short code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    /**
+     * Get the string for a code
+     */
+    public String decode(short code) {
+        return values[code & 0xFFFF];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * Number of strings turned away because the table was full
+     */
+    public long overflowCount() {
+        return overflows.get();
+    }
+
+    /**
+     * Rough heap footprint of the table, counting each string's characters once
+     */
+    public long estimatedHeapBytes() {
+        String[] snapshot = values;
+        long bytes = 16L + 8L * snapshot.length;
+        for (String value : snapshot) {
+            if (value != null) {
+                // String object plus its backing array, plus the map node and boxed code
+                bytes += 24 + 16 + value.length() + 48;
+            }
+        }
+        return bytes;
+    }
+
+    private synchronized int add(String value) {
+        Short existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (size >= MAX_CODES) {
+            if (overflows.getAndIncrement() == 0) {
+                log.warn("Forecast dictionary is full at {} strings, new strings are kept per forecast", size);
+            }
+            return FULL;
+        }
+
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, Math.min(current.length * 2, MAX_CODES));
+        }
+        short code = (short) size;
+        current[size++] = value;
+        // Publish the array before the code so readers holding the code can see the value
+        values = current;
+        codes.put(value, code);
+        return code;
+    }
+}
@@ -0,0 +1,626 @@
+package com.pjr22.tripweather.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Immutable, pre-parsed view of an NWS forecast's periods, stored as primitive columns
+ * so thousands of gridpoints can be held in memory. Period boundaries are seconds
+ * from a base time, kept sorted so a target time can be located with a binary search.
+ * Repeated strings are stored as codes into a shared {@link ForecastDictionary}, or
+ * into the index's own table once the dictionary is full, and {@link WeatherData}
+ * objects are only created when a period is returned to a caller.
+ */
+public final class ForecastIndex {
+
+    private static final short MISSING_TEMPERATURE = Short.MIN_VALUE;
+    private static final byte MISSING_PRECIPITATION = -1;
+    private static final int MISSING_INT = Integer.MIN_VALUE;
+    private static final byte SERIAL_VERSION = 1;
+    private static final String[] NO_STRINGS = new String[0];
+
+    private final ForecastDictionary dictionary;
+    // Strings for codes from ForecastDictionary.MAX_CODES up, usually empty
+    private final String[] localStrings;
+    private final long baseTime;
+    private final int[] startOffsets;
+    private final int[] endOffsets;
+    private final short[] utcOffsetMinutes;
+    private final short[] conditions;
+    private final short[] temperatures;
+    private final short[] temperatureUnits;
+    private final short[] windSpeeds;
+    private final short[] windDirections;
+    private final short[] iconUrls;
+    private final byte[] precipitationProbabilities;
+
+    private ForecastIndex(ForecastDictionary dictionary, String[] localStrings, long baseTime, int size) {
+        this.dictionary = dictionary;
+        this.localStrings = localStrings;
+        this.baseTime = baseTime;
+        this.startOffsets = new int[size];
+        this.endOffsets = new int[size];
+        this.utcOffsetMinutes = new short[size];
+        this.conditions = new short[size];
+        this.temperatures = new short[size];
+        this.temperatureUnits = new short[size];
+        this.windSpeeds = new short[size];
+        this.windDirections = new short[size];
+        this.iconUrls = new short[size];
+        this.precipitationProbabilities = new byte[size];
+    }
+
+    /**
+     * Decode an NWS forecast response straight from the parser, without building a
+     * JSON tree. Only properties.periods is read; everything else is skipped.
+     *
+     * @param parser Parser positioned before the start of the response document
+     * @param dictionary Shared table for the repeated strings
+     * @param maxPeriods Upper bound on the periods kept; the earliest ones are kept
+     * @return Index of all periods that have a start and end time, or null if the
+     *         document has no "properties" object
+     */
+    public static ForecastIndex read(JsonParser parser, ForecastDictionary dictionary, int maxPeriods)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+
+        ForecastIndex index = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("properties".equals(field) && value == JsonToken.START_OBJECT) {
+                index = readProperties(parser, new PeriodReader(new Encoder(dictionary)));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return index == null ? null : index.truncate(maxPeriods);
+    }
+
+    private static ForecastIndex readProperties(JsonParser parser, PeriodReader reader) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("periods".equals(field) && value == JsonToken.START_ARRAY) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        reader.readPeriod(parser);
+                    } else {
+                        // Skip null or malformed periods without losing our place in the array
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return reader.build();
+    }
+
+    public int size() {
+        return startOffsets.length;
+    }
+
+    /**
+     * Approximate heap retained by this index, not counting the shared dictionary
+     */
+    public long estimatedHeapBytes() {
+        int n = startOffsets.length;
+        // Object header and fields, plus a 16 byte header per column
+        return 72 + 12 * 16 + n * (4L + 4 + 2 + 2 + 2 + 2 + 2 + 2 + 2 + 1);
+    }
+
+    /**
+     * Find the period containing an instant
+     * @param epochSecond Target time in epoch seconds
+     * @return Index of the period, or -1 if no period contains the time
+     */
+    public int findPeriod(long epochSecond) {
+        long target = epochSecond - baseTime;
+        int low = 0;
+        int high = startOffsets.length - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (startOffsets[mid] <= target) {
+                candidate = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return candidate >= 0 && target < endOffsets[candidate] ? candidate : -1;
+    }
+
+    /**
+     * Find the period containing a local date/time, interpreted in the UTC offset
+     * the forecast itself uses for that period
+     * @param target Local date/time at the forecast location
+     * @return Index of the period, or -1 if no period contains the time
+     */
+    public int findPeriod(LocalDateTime target) {
+        if (startOffsets.length == 0) {
+            return -1;
+        }
+
+        long localSeconds = target.toEpochSecond(ZoneOffset.UTC);
+        int offset = utcOffsetMinutes[0];
+        int i = findPeriod(localSeconds - offset * 60L);
+        if (i >= 0 && utcOffsetMinutes[i] == offset) {
+            return i;
+        }
+
+        // The forecast spans a UTC offset change, so retry with the offset on the other side
+        int otherOffset = i >= 0 ? utcOffsetMinutes[i] : utcOffsetMinutes[startOffsets.length - 1];
+        if (otherOffset == offset) {
+            return i;
+        }
+        int j = findPeriod(localSeconds - otherOffset * 60L);
+        return j >= 0 && utcOffsetMinutes[j] == otherOffset ? j : -1;
+    }
+
+    /**
+     * Create the API representation of one period
+     */
+    public WeatherData toWeatherData(int i) {
+        return new WeatherData(decode(conditions[i]),
+                temperatures[i] == MISSING_TEMPERATURE ? null : (int) temperatures[i],
+                decode(temperatureUnits[i]),
+                decode(windSpeeds[i]),
+                decode(windDirections[i]),
+                decode(iconUrls[i]),
+                precipitationProbabilities[i] == MISSING_PRECIPITATION ? null : (int) precipitationProbabilities[i]);
+    }
+
+    private String decode(short code) {
+        int c = code & 0xFFFF;
+        return c < ForecastDictionary.MAX_CODES
+                ? dictionary.decode(code)
+                : localStrings[c - ForecastDictionary.MAX_CODES];
+    }
+
+    /**
+     * Serialize the index for storage outside this process. Dictionary codes are only
+     * meaningful locally, so the strings used are written out alongside the columns.
+     */
+    public byte[] toBytes() {
+        Map<Short, Short> localCodes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        localCodes.put((short) 0, (short) 0);
+        strings.add(null);
+
+        int n = size();
+        short[][] codeColumns = {conditions, temperatureUnits, windSpeeds, windDirections, iconUrls};
+        short[][] localColumns = new short[codeColumns.length][n];
+        for (int c = 0; c < codeColumns.length; c++) {
+            for (int i = 0; i < n; i++) {
+                short code = codeColumns[c][i];
+                Short local = localCodes.get(code);
+                if (local == null) {
+                    local = (short) strings.size();
+                    localCodes.put(code, local);
+                    strings.add(decode(code));
+                }
+                localColumns[c][i] = local;
+            }
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + n * 23 + strings.size() * 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(SERIAL_VERSION);
+            out.writeLong(baseTime);
+            out.writeInt(strings.size());
+            for (int i = 1; i < strings.size(); i++) {
+                out.writeUTF(strings.get(i));
+            }
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeInt(startOffsets[i]);
+                out.writeInt(endOffsets[i]);
+                out.writeShort(utcOffsetMinutes[i]);
+                out.writeShort(temperatures[i]);
+                out.writeByte(precipitationProbabilities[i]);
+                for (short[] column : localColumns) {
+                    out.writeShort(column[i]);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Writing to memory cannot fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Restore an index written by {@link #toBytes()}
+     * @param data Serialized index
+     * @param dictionary Dictionary to encode the index's strings into
+     * @throws IOException If the data is truncated or was written by another format version
+     */
+    public static ForecastIndex fromBytes(byte[] data, ForecastDictionary dictionary) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readByte() != SERIAL_VERSION) {
+            throw new IOException("Unsupported forecast format version");
+        }
+
+        long baseTime = in.readLong();
+        int stringCount = in.readInt();
+        if (stringCount < 1 || stringCount > data.length) {
+            throw new IOException("Corrupt forecast string table");
+        }
+        Encoder encoder = new Encoder(dictionary);
+        short[] globalCodes = new short[stringCount];
+        for (int i = 1; i < stringCount; i++) {
+            globalCodes[i] = encoder.encode(in.readUTF());
+        }
+
+        int size = in.readInt();
+        if (size < 0 || size > data.length) {
+            throw new IOException("Corrupt forecast period count");
+        }
+        ForecastIndex index = new ForecastIndex(dictionary, encoder.localStrings(), baseTime, size);
+        short[][] codeColumns = {index.conditions, index.temperatureUnits, index.windSpeeds,
+                index.windDirections, index.iconUrls};
+        for (int i = 0; i < index.size(); i++) {
+            index.startOffsets[i] = in.readInt();
+            index.endOffsets[i] = in.readInt();
+            index.utcOffsetMinutes[i] = in.readShort();
+            index.temperatures[i] = in.readShort();
+            index.precipitationProbabilities[i] = in.readByte();
+            for (short[] column : codeColumns) {
+                int local = in.readUnsignedShort();
+                if (local >= stringCount) {
+                    throw new IOException("Corrupt forecast string reference");
+                }
+                column[i] = globalCodes[local];
+            }
+        }
+        return index;
+    }
+
+    private ForecastIndex truncate(int maxPeriods) {
+        if (startOffsets.length <= maxPeriods) {
+            return this;
+        }
+        ForecastIndex index = new ForecastIndex(dictionary, localStrings, baseTime, Math.max(0, maxPeriods));
+        for (int i = 0; i < index.size(); i++) {
+            index.copyFrom(this, i, i);
+        }
+        return index;
+    }
+
+    private void copyFrom(ForecastIndex source, int from, int to) {
+        startOffsets[to] = source.startOffsets[from];
+        endOffsets[to] = source.endOffsets[from];
+        utcOffsetMinutes[to] = source.utcOffsetMinutes[from];
+        conditions[to] = source.conditions[from];
+        temperatures[to] = source.temperatures[from];
+        temperatureUnits[to] = source.temperatureUnits[from];
+        windSpeeds[to] = source.windSpeeds[from];
+        windDirections[to] = source.windDirections[from];
+        iconUrls[to] = source.iconUrls[from];
+        precipitationProbabilities[to] = source.precipitationProbabilities[from];
+    }
+
+    /**
+     * Assigns codes to one index's strings: shared dictionary codes where possible, and
+     * codes into the index's own table for new strings once the dictionary is full
+     */
+    private static final class Encoder {
+
+        private final ForecastDictionary dictionary;
+        private Map<String, Short> localCodes;
+        private List<String> localValues;
+
+        Encoder(ForecastDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        short encode(String value) throws IOException {
+            int code = dictionary.encode(value);
+            if (code != ForecastDictionary.FULL) {
+                return (short) code;
+            }
+
+            if (localCodes == null) {
+                localCodes = new HashMap<>();
+                localValues = new ArrayList<>();
+            }
+            Short local = localCodes.get(value);
+            if (local == null) {
+                int next = ForecastDictionary.MAX_CODES + localValues.size();
+                if (next > 0xFFFF) {
+                    throw new IOException("Too many distinct strings in one forecast");
+                }
+                local = (short) next;
+                localCodes.put(value, local);
+                localValues.add(value);
+            }
+            return local;
+        }
+
+        String[] localStrings() {
+            return localValues == null ? NO_STRINGS : localValues.toArray(NO_STRINGS);
+        }
+    }
+
+    /**
+     * Accumulates decoded periods into growable columns
+     */
+    private static final class PeriodReader {
+
+        private final Encoder encoder;
+        private final short unknownCode;
+        private final short fahrenheitCode;
+
+        private int count;
+        private long[] startTimes = new long[160];
+        private long[] endTimes = new long[160];
+        private short[] utcOffsetMinutes = new short[160];
+        private short[] conditions = new short[160];
+        private short[] temperatures = new short[160];
+        private short[] temperatureUnits = new short[160];
+        private short[] windSpeeds = new short[160];
+        private short[] windDirections = new short[160];
+        private short[] iconUrls = new short[160];
+        private byte[] precipitationProbabilities = new byte[160];
+
+        // Scratch results of the last timestamp parse
+        private long parsedEpochSecond;
+        private int parsedOffsetSeconds;
+
+        PeriodReader(Encoder encoder) throws IOException {
+            this.encoder = encoder;
+            this.unknownCode = encoder.encode("Unknown");
+            this.fahrenheitCode = encoder.encode("F");
+        }
+
+        void readPeriod(JsonParser parser) throws IOException {
+            ensureCapacity(count + 1);
+
+            boolean hasStart = false;
+            boolean hasEnd = false;
+            conditions[count] = unknownCode;
+            temperatures[count] = MISSING_TEMPERATURE;
+            temperatureUnits[count] = fahrenheitCode;
+            windSpeeds[count] = unknownCode;
+            windDirections[count] = unknownCode;
+            iconUrls[count] = 0;
+            precipitationProbabilities[count] = MISSING_PRECIPITATION;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "startTime" -> {
+                        if (parseTimestamp(parser, value)) {
+                            startTimes[count] = parsedEpochSecond;
+                            utcOffsetMinutes[count] = (short) (parsedOffsetSeconds / 60);
+                            hasStart = true;
+                        }
+                    }
+                    case "endTime" -> {
+                        if (parseTimestamp(parser, value)) {
+                            endTimes[count] = parsedEpochSecond;
+                            hasEnd = true;
+                        }
+                    }
+                    case "temperature" -> {
+                        int temperature = readInt(parser, value);
+                        temperatures[count] = temperature == MISSING_INT
+                                ? MISSING_TEMPERATURE
+                                : (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, temperature));
+                    }
+                    case "temperatureUnit" -> temperatureUnits[count] = readCode(parser, value);
+                    case "windSpeed" -> windSpeeds[count] = readCode(parser, value);
+                    case "windDirection" -> windDirections[count] = readCode(parser, value);
+                    case "icon" -> iconUrls[count] = readCode(parser, value);
+                    case "shortForecast" -> conditions[count] = readCode(parser, value);
+                    case "probabilityOfPrecipitation" -> {
+                        int probability = readInt(parser, value);
+                        precipitationProbabilities[count] = probability == MISSING_INT
+                                ? MISSING_PRECIPITATION
+                                : (byte) Math.max(0, Math.min(100, probability));
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+            // A period without a usable start and end is dropped; the rest of the forecast is kept
+            if (hasStart && hasEnd) {
+                count++;
+            }
+        }
+
+        private short readCode(JsonParser parser, JsonToken value) throws IOException {
+            return value == JsonToken.VALUE_NULL ? 0 : encoder.encode(parser.getText());
+        }
+
+        /**
+         * Read an integer that is either a bare number or a {"value": n} object
+         */
+        private int readInt(JsonParser parser, JsonToken value) throws IOException {
+            if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                return parser.getValueAsInt();
+            }
+            if (value != JsonToken.START_OBJECT) {
+                return MISSING_INT;
+            }
+
+            int result = MISSING_INT;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                if ("value".equals(field)
+                        && (fieldValue == JsonToken.VALUE_NUMBER_INT || fieldValue == JsonToken.VALUE_NUMBER_FLOAT)) {
+                    result = parser.getValueAsInt();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Parse an ISO-8601 offset timestamp such as 2025-10-16T14:00:00-06:00 from the
+         * parser's character buffer, without creating intermediate objects
+         * @return Whether the value was a valid timestamp; if so the result is in
+         *         parsedEpochSecond and parsedOffsetSeconds
+         */
+        private boolean parseTimestamp(JsonParser parser, JsonToken value) throws IOException {
+            if (value != JsonToken.VALUE_STRING) {
+                parser.skipChildren();
+                return false;
+            }
+
+            char[] text = parser.getTextCharacters();
+            int offset = parser.getTextOffset();
+            int length = parser.getTextLength();
+
+            if (length == 25 && text[offset + 4] == '-' && text[offset + 10] == 'T'
+                    && (text[offset + 19] == '+' || text[offset + 19] == '-')) {
+                int year = digits(text, offset, 4);
+                int month = digits(text, offset + 5, 2);
+                int day = digits(text, offset + 8, 2);
+                int hour = digits(text, offset + 11, 2);
+                int minute = digits(text, offset + 14, 2);
+                int second = digits(text, offset + 17, 2);
+                int zoneHours = digits(text, offset + 20, 2);
+                int zoneMinutes = digits(text, offset + 23, 2);
+                // Out of range fields fall through, so the full parser rejects them
+                if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+                        && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59
+                        && zoneHours >= 0 && zoneMinutes >= 0 && zoneMinutes <= 59
+                        && zoneHours * 60 + zoneMinutes <= 18 * 60) {
+                    int sign = text[offset + 19] == '-' ? -1 : 1;
+                    parsedOffsetSeconds = sign * (zoneHours * 3600 + zoneMinutes * 60);
+                    parsedEpochSecond = epochDay(year, month, day) * 86400L
+                            + hour * 3600L + minute * 60L + second - parsedOffsetSeconds;
+                    return true;
+                }
+            }
+
+            // Anything unusual (UTC "Z", fractional seconds) goes through the full parser
+            try {
+                OffsetDateTime dateTime = OffsetDateTime.parse(parser.getText());
+                parsedEpochSecond = dateTime.toEpochSecond();
+                parsedOffsetSeconds = dateTime.getOffset().getTotalSeconds();
+                return true;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        private static int daysInMonth(int year, int month) {
+            return switch (month) {
+                case 2 -> Year.isLeap(year) ? 29 : 28;
+                case 4, 6, 9, 11 -> 30;
+                default -> 31;
+            };
+        }
+
+        private static int digits(char[] text, int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                char c = text[i];
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        /**
+         * Days since 1970-01-01 for a proleptic Gregorian date
+         */
+        private static long epochDay(int year, int month, int day) {
+            long y = month <= 2 ? year - 1 : year;
+            long era = Math.floorDiv(y, 400);
+            long yearOfEra = y - era * 400;
+            long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= startTimes.length) {
+                return;
+            }
+            int newLength = startTimes.length * 2;
+            startTimes = Arrays.copyOf(startTimes, newLength);
+            endTimes = Arrays.copyOf(endTimes, newLength);
+            utcOffsetMinutes = Arrays.copyOf(utcOffsetMinutes, newLength);
+            conditions = Arrays.copyOf(conditions, newLength);
+            temperatures = Arrays.copyOf(temperatures, newLength);
+            temperatureUnits = Arrays.copyOf(temperatureUnits, newLength);
+            windSpeeds = Arrays.copyOf(windSpeeds, newLength);
+            windDirections = Arrays.copyOf(windDirections, newLength);
+            iconUrls = Arrays.copyOf(iconUrls, newLength);
+            precipitationProbabilities = Arrays.copyOf(precipitationProbabilities, newLength);
+        }
+
+        ForecastIndex build() {
+            // NWS returns periods in order, but the binary search depends on it so make sure
+            boolean sorted = true;
+            for (int i = 1; i < count && sorted; i++) {
+                sorted = startTimes[i - 1] <= startTimes[i];
+            }
+
+            int[] order;
+            if (sorted) {
+                order = IntStream.range(0, count).toArray();
+            } else {
+                order = IntStream.range(0, count).boxed()
+                        .sorted(Comparator.comparingLong(i -> startTimes[i]))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+            }
+
+            long baseTime = count == 0 ? 0 : startTimes[order[0]];
+            ForecastIndex index = new ForecastIndex(encoder.dictionary, encoder.localStrings(), baseTime, count);
+            for (int i = 0; i < count; i++) {
+                int source = order[i];
+                index.startOffsets[i] = toOffset(startTimes[source] - baseTime);
+                index.endOffsets[i] = toOffset(endTimes[source] - baseTime);
+                index.utcOffsetMinutes[i] = utcOffsetMinutes[source];
+                index.conditions[i] = conditions[source];
+                index.temperatures[i] = temperatures[source];
+                index.temperatureUnits[i] = temperatureUnits[source];
+                index.windSpeeds[i] = windSpeeds[source];
+                index.windDirections[i] = windDirections[source];
+                index.iconUrls[i] = iconUrls[source];
+                index.precipitationProbabilities[i] = precipitationProbabilities[source];
+            }
+            return index;
+        }
+
+        private static int toOffset(long seconds) {
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, seconds));
+        }
+    }
+}
@@ -118,6 +118,16 @@ public class LocationData {
         
         @JsonProperty("place_id")
         private String placeId;
+        
+        // Set on snap results: road name, index of the input location and how far it was moved, in meters
+        @JsonProperty("name")
+        private String name;
+        
+        @JsonProperty("source_id")
+        private Integer sourceId;
+        
+        @JsonProperty("snapped_distance")
+        private Double snappedDistance;
     }
     
     @Getter
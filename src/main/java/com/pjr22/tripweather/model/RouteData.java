@@ -1,12 +1,42 @@
 package com.pjr22.tripweather.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
 public class RouteData {
     
     @JsonProperty("geometry")
-    private List<List<Double>> geometry;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private RouteGeometry geometry;
+
+    // Set instead of geometry when the client asked for the encoded polyline format
+    @JsonProperty("encodedGeometry")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String encodedGeometry;
+
+    @JsonProperty("encodedElevation")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String encodedElevation;
+
+    @JsonProperty("polylinePrecision")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer polylinePrecision;
+
+    @JsonProperty("elevationPrecision")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer elevationPrecision;
+    
+    // Tolerances in meters, ascending, of the levels of detail described by detailLevels
+    @JsonProperty("detailTolerances")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private double[] detailTolerances;
+
+    // Per vertex, how many of the detailTolerances it is kept at; see RouteGeometry.detailLevels
+    @JsonProperty("detailLevels")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private int[] detailLevels;
     
     @JsonProperty("distance")
     private Double distance;
@@ -19,23 +49,92 @@ public class RouteData {
     
     @JsonProperty("waypoints")
     private List<WaypointCoordinates> waypoints;
+
+    // Server-side only: times per waypoint and geometry vertex, null if no departure time was given
+    @JsonIgnore
+    private RouteTimeline timeline;
     
     public RouteData() {}
     
-    public RouteData(List<List<Double>> geometry, Double distance, Double duration) {
+    public RouteData(RouteGeometry geometry, Double distance, Double duration) {
         this.geometry = geometry;
         this.distance = distance;
         this.duration = duration;
     }
     
-    public List<List<Double>> getGeometry() {
+    public RouteGeometry getGeometry() {
         return geometry;
     }
     
-    public void setGeometry(List<List<Double>> geometry) {
+    public void setGeometry(RouteGeometry geometry) {
         this.geometry = geometry;
     }
     
+    public String getEncodedGeometry() {
+        return encodedGeometry;
+    }
+    
+    public void setEncodedGeometry(String encodedGeometry) {
+        this.encodedGeometry = encodedGeometry;
+    }
+    
+    public String getEncodedElevation() {
+        return encodedElevation;
+    }
+    
+    public void setEncodedElevation(String encodedElevation) {
+        this.encodedElevation = encodedElevation;
+    }
+    
+    public Integer getPolylinePrecision() {
+        return polylinePrecision;
+    }
+    
+    public void setPolylinePrecision(Integer polylinePrecision) {
+        this.polylinePrecision = polylinePrecision;
+    }
+    
+    public Integer getElevationPrecision() {
+        return elevationPrecision;
+    }
+    
+    public void setElevationPrecision(Integer elevationPrecision) {
+        this.elevationPrecision = elevationPrecision;
+    }
+    
+    public double[] getDetailTolerances() {
+        return detailTolerances;
+    }
+    
+    public void setDetailTolerances(double[] detailTolerances) {
+        this.detailTolerances = detailTolerances;
+    }
+    
+    public int[] getDetailLevels() {
+        return detailLevels;
+    }
+    
+    public void setDetailLevels(int[] detailLevels) {
+        this.detailLevels = detailLevels;
+    }
+    
+    /**
+     * Replace the coordinate array with an encoded polyline and, if the route has
+     * elevations, an encoded elevation channel
+     * @param precision Decimal places kept for latitude and longitude
+     * @param elevationPrecision Decimal places kept for elevation
+     */
+    public void encodeGeometry(int precision, int elevationPrecision) {
+        if (geometry == null) {
+            return;
+        }
+        this.encodedGeometry = geometry.encodePolyline(precision);
+        this.encodedElevation = geometry.encodeElevation(elevationPrecision);
+        this.polylinePrecision = precision;
+        this.elevationPrecision = encodedElevation != null ? elevationPrecision : null;
+        this.geometry = null;
+    }
+    
     public Double getDistance() {
         return distance;
     }
@@ -68,6 +167,14 @@ public class RouteData {
         this.waypoints = waypoints;
     }
     
+    public RouteTimeline getTimeline() {
+        return timeline;
+    }
+    
+    public void setTimeline(RouteTimeline timeline) {
+        this.timeline = timeline;
+    }
+    
     public static class RouteSegment {
         @JsonProperty("distance")
         private Double distance;
@@ -0,0 +1,468 @@
+package com.pjr22.tripweather.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Route line stored as one packed array of longitude, latitude and, optionally,
+ * elevation values, instead of a list of boxed coordinate lists. It is read and
+ * written as the usual GeoJSON coordinate array, [[lon, lat, elevation], ...], so
+ * the JSON shape is the same as before.
+ */
+@JsonSerialize(using = RouteGeometry.Serializer.class)
+@JsonDeserialize(using = RouteGeometry.Deserializer.class)
+public final class RouteGeometry {
+
+    private static final RouteGeometry EMPTY = new RouteGeometry(new double[0], 0, false);
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    /** Stands in for an unknown elevation in {@link #encodeElevation(int)}, the SRTM void value */
+    public static final double MISSING_ELEVATION = -32768.0;
+
+    private final double[] coordinates;
+    private final int size;
+    private final boolean hasElevation;
+
+    private RouteGeometry(double[] coordinates, int size, boolean hasElevation) {
+        this.coordinates = coordinates;
+        this.size = size;
+        this.hasElevation = hasElevation;
+    }
+
+    public static RouteGeometry empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param expectedSize Expected number of vertices; the builder grows as needed
+     * @param hasElevation Whether vertices carry an elevation value
+     */
+    public static Builder builder(int expectedSize, boolean hasElevation) {
+        return new Builder(expectedSize, hasElevation);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean hasElevation() {
+        return hasElevation;
+    }
+
+    public double longitude(int i) {
+        return coordinates[i * stride()];
+    }
+
+    public double latitude(int i) {
+        return coordinates[i * stride() + 1];
+    }
+
+    /**
+     * @return Elevation in meters, or NaN if the geometry has none
+     */
+    public double elevation(int i) {
+        return hasElevation ? coordinates[i * 3 + 2] : Double.NaN;
+    }
+
+    /**
+     * Copy of the vertices from index from to index to, both inclusive
+     */
+    public RouteGeometry slice(int from, int to) {
+        int stride = stride();
+        return new RouteGeometry(Arrays.copyOfRange(coordinates, from * stride, (to + 1) * stride),
+                to - from + 1, hasElevation);
+    }
+
+    /**
+     * Douglas-Peucker significance of every vertex: the largest tolerance, in meters,
+     * at which the vertex is still kept. Computing this once lets any number of
+     * levels of detail be selected with {@link #simplify(double[], double)}.
+     *
+     * @param preserved Indices that must survive any simplification, such as
+     *                  waypoints and segment boundaries; the end points always do
+     * @return Significance per vertex, infinite for preserved vertices
+     */
+    public double[] significance(int[] preserved) {
+        double[] significance = new double[size];
+        if (size == 0) {
+            return significance;
+        }
+        significance[0] = Double.POSITIVE_INFINITY;
+        significance[size - 1] = Double.POSITIVE_INFINITY;
+        if (preserved != null) {
+            for (int index : preserved) {
+                if (index >= 0 && index < size) {
+                    significance[index] = Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+
+        int stride = stride();
+
+        // Explicit stack of (start, end, parent significance) instead of recursion
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        double[] parents = new double[64];
+        int top = 0;
+
+        // Simplify each run between preserved vertices on its own, so they stay fixed
+        int start = 0;
+        for (int i = 1; i < size; i++) {
+            if (significance[i] == Double.POSITIVE_INFINITY) {
+                starts[top] = start;
+                ends[top] = i;
+                parents[top] = Double.POSITIVE_INFINITY;
+                top++;
+                if (top == starts.length) {
+                    starts = Arrays.copyOf(starts, top * 2);
+                    ends = Arrays.copyOf(ends, top * 2);
+                    parents = Arrays.copyOf(parents, top * 2);
+                }
+                start = i;
+            }
+        }
+
+        while (top > 0) {
+            top--;
+            int a = starts[top];
+            int b = ends[top];
+            double parent = parents[top];
+            if (b - a < 2) {
+                continue;
+            }
+
+            // Equirectangular projection around the chord, scaled to meters at the end
+            double scale = Math.cos(Math.toRadians((latitude(a) + latitude(b)) / 2));
+            double ax = longitude(a) * scale;
+            double ay = latitude(a);
+            double dx = longitude(b) * scale - ax;
+            double dy = latitude(b) - ay;
+            double lengthSquared = dx * dx + dy * dy;
+
+            int farthest = -1;
+            double farthestSquared = -1;
+            for (int k = a + 1, offset = (a + 1) * stride; k < b; k++, offset += stride) {
+                double px = coordinates[offset] * scale - ax;
+                double py = coordinates[offset + 1] - ay;
+                double t = lengthSquared > 0 ? (px * dx + py * dy) / lengthSquared : 0;
+                t = t < 0 ? 0 : (t > 1 ? 1 : t);
+                double ex = px - t * dx;
+                double ey = py - t * dy;
+                double distanceSquared = ex * ex + ey * ey;
+                if (distanceSquared > farthestSquared) {
+                    farthestSquared = distanceSquared;
+                    farthest = k;
+                }
+            }
+
+            // A vertex can never outlive the vertex whose split exposed it
+            double value = Math.min(Math.sqrt(farthestSquared) * METERS_PER_DEGREE, parent);
+            significance[farthest] = value;
+
+            if (top + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                ends = Arrays.copyOf(ends, ends.length * 2);
+                parents = Arrays.copyOf(parents, parents.length * 2);
+            }
+            starts[top] = a;
+            ends[top] = farthest;
+            parents[top] = value;
+            top++;
+            starts[top] = farthest;
+            ends[top] = b;
+            parents[top] = value;
+            top++;
+        }
+        return significance;
+    }
+
+    /**
+     * Simplified copy of the geometry
+     * @param toleranceMeters Maximum distance between the original and simplified line
+     * @param preserved Indices that must be kept, such as waypoints
+     */
+    public RouteGeometry simplify(double toleranceMeters, int[] preserved) {
+        return simplify(significance(preserved), toleranceMeters);
+    }
+
+    /**
+     * Select one level of detail from previously computed significance values
+     * @see #significance(int[])
+     */
+    public RouteGeometry simplify(double[] significance, double toleranceMeters) {
+        int kept = 0;
+        for (double value : significance) {
+            if (value >= toleranceMeters) {
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return this;
+        }
+
+        Builder builder = new Builder(kept, hasElevation);
+        for (int i = 0; i < size; i++) {
+            if (significance[i] >= toleranceMeters) {
+                builder.add(longitude(i), latitude(i), elevation(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Level of detail of every vertex for a fixed set of tolerances: the number of
+     * tolerances at which the vertex is still kept. Keeping only the vertices whose
+     * level is at least k gives the geometry simplified to tolerancesMeters[k - 1], so
+     * a client can switch levels with the zoom without asking for the route again.
+     *
+     * @param significance Significance per vertex, see {@link #significance(int[])}
+     * @param tolerancesMeters Tolerances in ascending order
+     */
+    public static int[] detailLevels(double[] significance, double[] tolerancesMeters) {
+        int[] levels = new int[significance.length];
+        for (int i = 0; i < significance.length; i++) {
+            int level = 0;
+            while (level < tolerancesMeters.length && significance[i] >= tolerancesMeters[level]) {
+                level++;
+            }
+            levels[i] = level;
+        }
+        return levels;
+    }
+
+    /**
+     * Encode the vertices as a Google encoded polyline (latitude first)
+     * @param precision Decimal places kept, 5 for the standard format
+     */
+    public String encodePolyline(int precision) {
+        double factor = Math.pow(10, precision);
+        StringBuilder encoded = new StringBuilder(size * 8);
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (int i = 0; i < size; i++) {
+            long latitude = Math.round(latitude(i) * factor);
+            long longitude = Math.round(longitude(i) * factor);
+            encodeValue(latitude - previousLatitude, encoded);
+            encodeValue(longitude - previousLongitude, encoded);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Encode the elevation channel with the same delta scheme as the polyline, one
+     * value per vertex. An unknown elevation is encoded as {@link #MISSING_ELEVATION},
+     * so decoders can leave it out the way the coordinate array does.
+     * @param precision Decimal places kept
+     * @return The encoded elevations, or null if the geometry has none
+     */
+    public String encodeElevation(int precision) {
+        if (!hasElevation) {
+            return null;
+        }
+        double factor = Math.pow(10, precision);
+        StringBuilder encoded = new StringBuilder(size * 3);
+        long missing = Math.round(MISSING_ELEVATION * factor);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            double elevation = elevation(i);
+            long value = Double.isNaN(elevation) ? missing : Math.round(elevation * factor);
+            encodeValue(value - previous, encoded);
+            previous = value;
+        }
+        return encoded.toString();
+    }
+
+    private static void encodeValue(long value, StringBuilder encoded) {
+        long remaining = value < 0 ? ~(value << 1) : value << 1;
+        while (remaining >= 0x20) {
+            encoded.append((char) ((0x20 | (remaining & 0x1f)) + 63));
+            remaining >>= 5;
+        }
+        encoded.append((char) (remaining + 63));
+    }
+
+    /**
+     * Great-circle distance along the line from the first vertex to each vertex, in meters
+     */
+    public double[] cumulativeDistances() {
+        double[] cumulative = new double[size];
+        int stride = stride();
+        for (int i = 1, offset = stride; i < size; i++, offset += stride) {
+            cumulative[i] = cumulative[i - 1] + distanceMeters(coordinates[offset - stride + 1],
+                    coordinates[offset - stride], coordinates[offset + 1], coordinates[offset]);
+        }
+        return cumulative;
+    }
+
+    /**
+     * Haversine distance between two points in meters
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dPhi = phi2 - phi1;
+        double dLambda = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dPhi / 2) * Math.sin(dPhi / 2)
+                + Math.cos(phi1) * Math.cos(phi2) * Math.sin(dLambda / 2) * Math.sin(dLambda / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Approximate heap retained by this geometry
+     */
+    public long estimatedHeapBytes() {
+        return 32 + 16 + 8L * coordinates.length;
+    }
+
+    /**
+     * Read a coordinate array, [[lon, lat], ...] or [[lon, lat, elevation], ...],
+     * straight into packed form. The parser must be positioned on the opening
+     * bracket. Whether there is an elevation channel is decided by the first
+     * vertex; a missing elevation after that is stored as NaN.
+     * @param expectedSize Vertex count to size the array for; an exact count avoids any copying
+     * @throws JsonParseException If a vertex is not an array of at least two numbers
+     */
+    public static RouteGeometry read(JsonParser parser, int expectedSize) throws IOException {
+        Builder builder = null;
+        double[] values = new double[3];
+        int index = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Invalid route point at index " + index);
+            }
+            int count = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                if (!token.isNumeric()) {
+                    throw new JsonParseException(parser, "Invalid route point at index " + index);
+                }
+                double value = parser.getDoubleValue();
+                if (count < values.length) {
+                    values[count] = value;
+                }
+                count++;
+            }
+            if (count < 2) {
+                throw new JsonParseException(parser, "Invalid route point at index " + index);
+            }
+            index++;
+            if (builder == null) {
+                builder = new Builder(expectedSize, count > 2);
+            }
+            builder.add(values[0], values[1], count > 2 ? values[2] : Double.NaN);
+        }
+        return builder == null ? EMPTY : builder.build();
+    }
+
+    private int stride() {
+        return hasElevation ? 3 : 2;
+    }
+
+    /**
+     * Appends vertices to a growable packed array
+     */
+    public static final class Builder {
+
+        private final boolean hasElevation;
+        private double[] coordinates;
+        private int size;
+
+        private Builder(int expectedSize, boolean hasElevation) {
+            this.hasElevation = hasElevation;
+            this.coordinates = new double[Math.max(2, expectedSize) * (hasElevation ? 3 : 2)];
+        }
+
+        public Builder add(double longitude, double latitude, double elevation) {
+            int stride = hasElevation ? 3 : 2;
+            int offset = size * stride;
+            if (offset + stride > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, Math.max(coordinates.length * 2, offset + stride));
+            }
+            coordinates[offset] = longitude;
+            coordinates[offset + 1] = latitude;
+            if (hasElevation) {
+                coordinates[offset + 2] = elevation;
+            }
+            size++;
+            return this;
+        }
+
+        /**
+         * Append the vertices of another geometry starting at index from
+         */
+        public Builder addAll(RouteGeometry geometry, int from) {
+            for (int i = from; i < geometry.size(); i++) {
+                add(geometry.longitude(i), geometry.latitude(i), geometry.elevation(i));
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public RouteGeometry build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            int length = size * (hasElevation ? 3 : 2);
+            return new RouteGeometry(length == coordinates.length ? coordinates : Arrays.copyOf(coordinates, length),
+                    size, hasElevation);
+        }
+    }
+
+    /**
+     * Writes the geometry as [[lon, lat, elevation], ...] without boxing
+     */
+    public static class Serializer extends JsonSerializer<RouteGeometry> {
+
+        @Override
+        public void serialize(RouteGeometry geometry, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeStartArray();
+            for (int i = 0; i < geometry.size; i++) {
+                generator.writeStartArray();
+                generator.writeNumber(geometry.longitude(i));
+                generator.writeNumber(geometry.latitude(i));
+                if (geometry.hasElevation && !Double.isNaN(geometry.elevation(i))) {
+                    generator.writeNumber(geometry.elevation(i));
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Reads [[lon, lat], ...] or [[lon, lat, elevation], ...], see {@link RouteGeometry#read}
+     */
+    public static class Deserializer extends JsonDeserializer<RouteGeometry> {
+
+        @Override
+        public RouteGeometry deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                return (RouteGeometry) context.handleUnexpectedToken(RouteGeometry.class, parser);
+            }
+
+            return read(parser, 256);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.pjr22.tripweather.model;
+
+import java.util.List;
+
+/**
+ * When a route reaches each waypoint and each geometry vertex, as epoch seconds.
+ * Times are kept to the second for the whole trip and only formatted for display
+ * at the output boundary, so long trips do not drift from per-leg rounding.
+ *
+ * A vertex at an intermediate waypoint gets the time the route leaves that waypoint;
+ * the destination gets the arrival time.
+ */
+public final class RouteTimeline {
+
+    private final long[] arrivals;
+    private final long[] departures;
+    private final long[] vertexTimes;
+
+    private RouteTimeline(long[] arrivals, long[] departures, long[] vertexTimes) {
+        this.arrivals = arrivals;
+        this.departures = departures;
+        this.vertexTimes = vertexTimes;
+    }
+
+    /**
+     * Compute the timeline of a route
+     * @param cumulative Distance along the geometry to each vertex, see {@link RouteGeometry#cumulativeDistances()}
+     * @param boundaries Vertex index of each waypoint; one more entry than there are legs
+     * @param legDurations Driving time of each leg in seconds
+     * @param start When the trip starts at the first waypoint, before any time spent there, in epoch seconds
+     * @param stopSeconds Time spent at each waypoint; may be shorter than the waypoint count
+     */
+    public static RouteTimeline compute(double[] cumulative, int[] boundaries, double[] legDurations,
+            long start, long[] stopSeconds) {
+        int legs = legDurations.length;
+        if (boundaries.length != legs + 1) {
+            throw new IllegalArgumentException("Expected " + (legs + 1) + " leg boundaries, got " + boundaries.length);
+        }
+
+        long[] arrivals = new long[legs + 1];
+        long[] departures = new long[legs + 1];
+        for (int k = 0; k <= legs; k++) {
+            arrivals[k] = k == 0 ? start : departures[k - 1] + Math.round(legDurations[k - 1]);
+            departures[k] = arrivals[k] + (k < stopSeconds.length ? Math.max(0, stopSeconds[k]) : 0);
+        }
+
+        // Spread each leg's driving time over its vertices in proportion to distance
+        int n = cumulative.length;
+        long[] vertexTimes = new long[n];
+        if (n == 0) {
+            return new RouteTimeline(arrivals, departures, vertexTimes);
+        }
+        int first = Math.min(Math.max(boundaries[0], 0), n);
+        for (int v = 0; v < first; v++) {
+            vertexTimes[v] = departures[0];
+        }
+        for (int k = 0; k < legs; k++) {
+            int from = Math.min(Math.max(boundaries[k], 0), n - 1);
+            int to = Math.min(Math.max(boundaries[k + 1], from), n - 1);
+            double length = cumulative[to] - cumulative[from];
+            for (int v = from; v <= to; v++) {
+                double f = length > 0 ? (cumulative[v] - cumulative[from]) / length : 0.0;
+                vertexTimes[v] = departures[k] + Math.round(f * legDurations[k]);
+            }
+        }
+        int last = Math.min(Math.max(boundaries[legs], 0), n - 1);
+        for (int v = last; v < n; v++) {
+            vertexTimes[v] = arrivals[legs];
+        }
+        return new RouteTimeline(arrivals, departures, vertexTimes);
+    }
+
+    /**
+     * Place the waypoints of a route whose way point indices are unknown by scaling
+     * each leg's reported distance to the length of the geometry
+     * @return Vertex index of each waypoint, for {@link #compute}
+     */
+    public static int[] boundariesByDistance(double[] cumulative, double[] legDistances) {
+        int legs = legDistances.length;
+        double total = 0.0;
+        for (double legDistance : legDistances) {
+            total += legDistance;
+        }
+
+        int n = cumulative.length;
+        double length = n > 0 ? cumulative[n - 1] : 0.0;
+        int[] boundaries = new int[legs + 1];
+        boundaries[legs] = Math.max(0, n - 1);
+        double running = 0.0;
+        int v = 0;
+        for (int k = 1; k < legs; k++) {
+            running += legDistances[k - 1];
+            double target = total > 0 ? length * running / total : length * k / legs;
+            while (v < n - 1 && cumulative[v] < target) {
+                v++;
+            }
+            // Take whichever of the two vertices around the target is closer
+            if (v > 0 && target - cumulative[v - 1] < cumulative[v] - target) {
+                v--;
+            }
+            boundaries[k] = Math.max(v, boundaries[k - 1]);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Convert ORS way point indices to leg boundaries
+     * @return The boundaries, or null if they do not describe the given number of legs
+     */
+    public static int[] boundariesFromWayPoints(List<Integer> wayPoints, int legs, int vertexCount) {
+        if (wayPoints == null || wayPoints.size() != legs + 1) {
+            return null;
+        }
+        int[] boundaries = new int[legs + 1];
+        for (int k = 0; k <= legs; k++) {
+            Integer index = wayPoints.get(k);
+            if (index == null || index < 0 || index >= vertexCount || (k > 0 && index < boundaries[k - 1])) {
+                return null;
+            }
+            boundaries[k] = index;
+        }
+        return boundaries;
+    }
+
+    public int waypointCount() {
+        return arrivals.length;
+    }
+
+    public long arrival(int waypoint) {
+        return arrivals[waypoint];
+    }
+
+    public long departure(int waypoint) {
+        return departures[waypoint];
+    }
+
+    public int vertexCount() {
+        return vertexTimes.length;
+    }
+
+    /**
+     * When the route reaches a geometry vertex
+     */
+    public long timeAt(int vertex) {
+        return vertexTimes[vertex];
+    }
+
+    /**
+     * Copy of the per-vertex times, for callers that index them in a loop
+     */
+    public long[] vertexTimes() {
+        return vertexTimes.clone();
+    }
+}
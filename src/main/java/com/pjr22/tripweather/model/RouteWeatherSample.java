@@ -0,0 +1,20 @@
+package com.pjr22.tripweather.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Forecast at one point sampled along a route, at the time the route reaches it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteWeatherSample {
+
+    private Double latitude;
+    private Double longitude;
+    private Double distance; // meters from the start of the route
+    private String time; // ISO-8601 instant the route reaches this point
+    private WeatherData weather;
+}
@@ -0,0 +1,34 @@
+package com.pjr22.tripweather.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Upstream weather result shared between application instances and kept across
+ * restarts. Keys are prefixed with the kind of result, e.g. "points:" or "forecast:".
+ */
+@Entity
+@Table(name = "weather_cache", indexes = @Index(name = "weather_cache_expires_at_idx", columnList = "expires_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeatherCacheEntry {
+
+    @Id
+    @Column(name = "cache_key", length = 1024)
+    private String cacheKey;
+
+    @Column(name = "payload", nullable = false)
+    private byte[] payload;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
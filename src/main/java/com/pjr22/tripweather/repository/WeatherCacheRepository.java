@@ -0,0 +1,64 @@
+package com.pjr22.tripweather.repository;
+
+import com.pjr22.tripweather.model.WeatherCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data JPA repository for the shared weather cache
+ */
+@Repository
+public interface WeatherCacheRepository extends JpaRepository<WeatherCacheEntry, String> {
+
+    /**
+     * Find an entry that has not expired yet
+     * @param cacheKey The cache key to search for
+     * @param now The current time
+     * @return Optional containing the entry if found and still valid
+     */
+    Optional<WeatherCacheEntry> findByCacheKeyAndExpiresAtAfter(String cacheKey, Instant now);
+
+    /**
+     * Keys and expiry times of the entries that have not expired yet, without payloads
+     * @param now The current time
+     */
+    List<StoredKey> findByExpiresAtAfter(Instant now);
+
+    /**
+     * Insert an entry, or replace it if another instance already stored one
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO weather_cache (cache_key, payload, expires_at) VALUES (:cacheKey, :payload, :expiresAt) "
+            + "ON CONFLICT (cache_key) DO UPDATE SET payload = EXCLUDED.payload, expires_at = EXCLUDED.expires_at",
+            nativeQuery = true)
+    void upsert(@Param("cacheKey") String cacheKey, @Param("payload") byte[] payload,
+            @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Delete entries that expired before the given time
+     * @return Number of entries deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM WeatherCacheEntry e WHERE e.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+
+    /**
+     * Key of a stored entry and when it expires
+     */
+    interface StoredKey {
+
+        String getCacheKey();
+
+        Instant getExpiresAt();
+    }
+}
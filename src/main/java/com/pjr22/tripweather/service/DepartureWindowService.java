@@ -0,0 +1,217 @@
+package com.pjr22.tripweather.service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pjr22.tripweather.Utils;
+import com.pjr22.tripweather.model.DepartureOption;
+import com.pjr22.tripweather.model.ForecastIndex;
+import com.pjr22.tripweather.model.RouteData;
+import com.pjr22.tripweather.model.WeatherData;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ranks candidate departure times for a route by the weather it would drive through.
+ *
+ * Leaving later shifts every point's arrival time by the same amount, so the route is
+ * sampled once and each candidate only adds its offset to the sample times. Forecasts
+ * for the samples are fetched once, and each forecast period's cost is computed once,
+ * so evaluating a candidate is one period lookup per sample.
+ */
+@Service
+@Slf4j
+public class DepartureWindowService {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private final RouteWeatherService routeWeatherService;
+    private final WeatherService weatherService;
+    private final int defaultWindowHours;
+    private final int defaultStepMinutes;
+    private final int maxCandidates;
+    private final int defaultLimit;
+
+    public DepartureWindowService(
+            RouteWeatherService routeWeatherService,
+            WeatherService weatherService,
+            @Value("${weather.departures.default-window-hours:48}") int defaultWindowHours,
+            @Value("${weather.departures.default-step-minutes:30}") int defaultStepMinutes,
+            @Value("${weather.departures.max-candidates:500}") int maxCandidates,
+            @Value("${weather.departures.default-limit:10}") int defaultLimit) {
+        this.routeWeatherService = routeWeatherService;
+        this.weatherService = weatherService;
+        this.defaultWindowHours = defaultWindowHours;
+        this.defaultStepMinutes = defaultStepMinutes;
+        this.maxCandidates = Math.max(1, maxCandidates);
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * Rank departures from the route's own departure time to windowHours later, every
+     * stepMinutes. Options whose whole route is covered by forecasts come first, then
+     * lower average cost, then earlier departure.
+     *
+     * @param route Route as returned by RouteService.calculateRoute
+     * @param windowHours Hours after the route's departure to consider, or null for the default
+     * @param stepMinutes Minutes between candidates, or null for the default
+     * @param intervalKm Distance between weather samples, or null for the default
+     * @param limit Number of options to return, or null for the default
+     * @return Best options first
+     */
+    public List<DepartureOption> rankDepartures(RouteData route, Integer windowHours, Integer stepMinutes,
+            Double intervalKm, Integer limit) {
+        RouteWeatherService.RouteSamples samples = routeWeatherService.sampleRoute(route, intervalKm, null);
+        ForecastIndex[] forecasts = weatherService.getForecasts(samples.latitudes(), samples.longitudes());
+
+        // Cost of every period of every distinct forecast; neighbouring samples usually share one
+        Map<ForecastIndex, PeriodCosts> costsByForecast = new IdentityHashMap<>();
+        PeriodCosts[] costs = new PeriodCosts[samples.size()];
+        for (int i = 0; i < costs.length; i++) {
+            if (forecasts[i] != null) {
+                costs[i] = costsByForecast.computeIfAbsent(forecasts[i], PeriodCosts::of);
+            }
+        }
+
+        long step = (stepMinutes != null && stepMinutes > 0 ? stepMinutes : defaultStepMinutes) * 60L;
+        long window = (windowHours != null && windowHours >= 0 ? windowHours : defaultWindowHours) * 3600L;
+        int candidates = (int) Math.min(maxCandidates, window / step + 1);
+
+        long[] times = samples.times();
+        List<Candidate> ranked = IntStream.range(0, candidates).parallel()
+                .mapToObj(k -> evaluate(k * step, times, forecasts, costs))
+                .sorted(Comparator.comparingInt(Candidate::missing)
+                        .thenComparingDouble(Candidate::averageCost)
+                        .thenComparingLong(Candidate::offset))
+                .limit(limit != null && limit > 0 ? limit : defaultLimit)
+                .toList();
+
+        List<RouteData.WaypointCoordinates> waypoints = route.getWaypoints();
+        ZoneId departureZone = Utils.zoneId(waypoints != null && !waypoints.isEmpty()
+                ? waypoints.get(0).getTimezone() : null);
+        ZoneId arrivalZone = Utils.zoneId(waypoints != null && !waypoints.isEmpty()
+                ? waypoints.get(waypoints.size() - 1).getTimezone() : null);
+        long departure = times[0];
+        long arrival = times[times.length - 1];
+
+        log.info("Ranked {} departures over {} samples and {} distinct forecasts", candidates, samples.size(),
+                costsByForecast.size());
+
+        return IntStream.range(0, ranked.size()).mapToObj(r -> {
+            Candidate candidate = ranked.get(r);
+            String worstCondition = candidate.worstSample() < 0 ? null
+                    : costs[candidate.worstSample()].conditions()[candidate.worstPeriod()];
+            return new DepartureOption(r + 1,
+                    Utils.formatEpochSecond(departure + candidate.offset(), departureZone),
+                    Utils.formatEpochSecond(arrival + candidate.offset(), arrivalZone),
+                    Instant.ofEpochSecond(departure + candidate.offset()).toString(),
+                    candidate.scored() > 0 ? candidate.averageCost() : null,
+                    candidate.maxPrecipitation() < 0 ? null : candidate.maxPrecipitation(),
+                    worstCondition,
+                    candidate.missing());
+        }).toList();
+    }
+
+    private static Candidate evaluate(long offset, long[] times, ForecastIndex[] forecasts, PeriodCosts[] costs) {
+        double total = 0.0;
+        int scored = 0;
+        int missing = 0;
+        int maxPrecipitation = -1;
+        double worstCost = -1.0;
+        int worstSample = -1;
+        int worstPeriod = -1;
+
+        for (int i = 0; i < times.length; i++) {
+            int period = forecasts[i] == null ? -1 : forecasts[i].findPeriod(times[i] + offset);
+            if (period < 0) {
+                missing++;
+                continue;
+            }
+            PeriodCosts sample = costs[i];
+            double cost = sample.costs()[period];
+            total += cost;
+            scored++;
+            maxPrecipitation = Math.max(maxPrecipitation, sample.precipitation()[period]);
+            if (cost > worstCost) {
+                worstCost = cost;
+                worstSample = i;
+                worstPeriod = period;
+            }
+        }
+
+        double averageCost = scored > 0 ? total / scored : Double.MAX_VALUE;
+        return new Candidate(offset, averageCost, scored, missing, maxPrecipitation, worstSample, worstPeriod);
+    }
+
+    private record Candidate(long offset, double averageCost, int scored, int missing, int maxPrecipitation,
+            int worstSample, int worstPeriod) {
+    }
+
+    /**
+     * Cost of driving through each period of one forecast: the chance of precipitation,
+     * plus penalties for hazardous conditions and strong wind
+     */
+    private record PeriodCosts(double[] costs, int[] precipitation, String[] conditions) {
+
+        static PeriodCosts of(ForecastIndex forecast) {
+            int n = forecast.size();
+            double[] costs = new double[n];
+            int[] precipitation = new int[n];
+            String[] conditions = new String[n];
+            for (int p = 0; p < n; p++) {
+                WeatherData period = forecast.toWeatherData(p);
+                precipitation[p] = period.getPrecipitationProbability() != null
+                        ? period.getPrecipitationProbability() : 0;
+                conditions[p] = period.getCondition();
+                costs[p] = precipitation[p] + conditionPenalty(period.getCondition())
+                        + windPenalty(period.getWindSpeed());
+            }
+            return new PeriodCosts(costs, precipitation, conditions);
+        }
+
+        private static double conditionPenalty(String condition) {
+            if (condition == null) {
+                return 0.0;
+            }
+            String c = condition.toLowerCase(Locale.ROOT);
+            double penalty = 0.0;
+            if (c.contains("snow") || c.contains("sleet") || c.contains("ice") || c.contains("freezing")
+                    || c.contains("blizzard")) {
+                penalty += 80.0;
+            }
+            if (c.contains("thunder")) {
+                penalty += 60.0;
+            }
+            if (c.contains("fog")) {
+                penalty += 20.0;
+            }
+            return penalty;
+        }
+
+        /**
+         * Penalty for wind above 20 mph, using the top of a range like "15 to 25 mph"
+         */
+        private static double windPenalty(String windSpeed) {
+            if (windSpeed == null) {
+                return 0.0;
+            }
+            int max = 0;
+            Matcher matcher = NUMBER.matcher(windSpeed);
+            while (matcher.find()) {
+                max = Math.max(max, Integer.parseInt(matcher.group()));
+            }
+            return max > 20 ? (max - 20) * 2.0 : 0.0;
+        }
+    }
+}
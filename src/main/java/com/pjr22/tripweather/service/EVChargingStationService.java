@@ -1,7 +1,9 @@
 package com.pjr22.tripweather.service;
 
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
 import com.pjr22.tripweather.dto.EVChargingStationRequest;
 import com.pjr22.tripweather.dto.EVChargingStationResponse;
+import com.pjr22.tripweather.model.RouteGeometry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
@@ -11,6 +13,7 @@ import org.springframework.web.client.RestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Service for interacting with the NREL EV Charging Stations API
@@ -22,12 +25,20 @@ public class EVChargingStationService {
     private final RestClient restClient;
     private final String nrelBaseUrl;
     private final String nrelApiKey;
+    private final InFlightRequestRegistry inFlightRequests;
+    private final double routeToleranceMeters;
+
+    private static final String UPSTREAM_NAME = "nrel";
 
     public EVChargingStationService(
             @Value("${nrel.base.url}") String nrelBaseUrl,
-            @Value("${nrel.api.key}") String nrelApiKey) {
+            @Value("${nrel.api.key}") String nrelApiKey,
+            @Value("${nrel.route.simplify-tolerance-meters:50}") double routeToleranceMeters,
+            InFlightRequestRegistry inFlightRequests) {
         this.nrelBaseUrl = nrelBaseUrl;
         this.nrelApiKey = nrelApiKey;
+        this.inFlightRequests = inFlightRequests;
+        this.routeToleranceMeters = routeToleranceMeters;
         this.restClient = RestClient.builder()
                 .baseUrl(nrelBaseUrl)
                 .messageConverters(converters -> converters.add(new org.springframework.http.converter.json.MappingJackson2HttpMessageConverter()))
@@ -46,7 +57,7 @@ public class EVChargingStationService {
             String routeWkt = convertRouteToWkt(request.getRoute());
             
             log.info("Making request to NREL EV charging stations API");
-            log.info("Route WKT: {}...", routeWkt.subSequence(0, 80));
+            log.info("Route WKT: {}...", routeWkt.subSequence(0, Math.min(80, routeWkt.length())));
             log.info("Request parameters: {}", request.getParameters());
             
             // Build the URI with only the API key (all parameters will be in request body)
@@ -57,8 +68,9 @@ public class EVChargingStationService {
             String requestUrl = uriBuilder.build().toUriString();
             log.info("NREL API request URL: {}", requestUrl);
             
-            // Create request body with route data and all parameters
-            Map<String, Object> requestBody = new java.util.HashMap<>();
+            // Create request body with route data and all parameters. A sorted map keeps
+            // the body stable so identical concurrent requests share one upstream call.
+            Map<String, Object> requestBody = new TreeMap<>();
             requestBody.put("route", routeWkt);
             
             // Add all parameters to request body (including route parameters)
@@ -73,13 +85,14 @@ public class EVChargingStationService {
             log.info("NREL API request body: {}", requestBody);
             
             // Make the POST request to NREL API with route in request body
-            EVChargingStationResponse response = restClient.post()
+            EVChargingStationResponse response = inFlightRequests.execute(UPSTREAM_NAME, requestBody.toString(),
+                  () -> restClient.post()
                   .uri(requestUrl)
                   .header("Content-Type", MediaType.APPLICATION_JSON.toString())
                   .header("Accept", MediaType.APPLICATION_JSON.toString())
                   .body(requestBody)
                   .retrieve()
-                  .body(EVChargingStationResponse.class);
+                  .body(EVChargingStationResponse.class));
             
             log.info("NREL API response received");
             log.info("Response type: {}", response != null ? response.getType() : "null");
@@ -99,28 +112,28 @@ public class EVChargingStationService {
     }
     
     /**
-     * Convert a list of [longitude, latitude] pairs to Well Known Text LINESTRING format
+     * Convert a route to Well Known Text LINESTRING format. The corridor search is
+     * miles wide, so the line is simplified first; full road detail only makes the
+     * request bigger and slower.
      * 
-     * @param route List of [longitude, latitude] pairs
+     * @param route Route geometry
      * @return WKT LINESTRING format
      */
-    private String convertRouteToWkt(java.util.List<java.util.List<Double>> route) {
+    private String convertRouteToWkt(RouteGeometry route) {
         if (route == null || route.isEmpty()) {
             throw new IllegalArgumentException("Route cannot be null or empty");
         }
         
-        StringBuilder wktBuilder = new StringBuilder("LINESTRING (");
+        RouteGeometry simplified = routeToleranceMeters > 0 ? route.simplify(routeToleranceMeters, null) : route;
+        log.info("Simplified route from {} to {} points", route.size(), simplified.size());
         
-        for (int i = 0; i < route.size(); i++) {
-            java.util.List<Double> point = route.get(i);
-            if (point == null || point.size() < 2) {
-                throw new IllegalArgumentException("Invalid route point at index " + i);
-            }
-            
+        StringBuilder wktBuilder = new StringBuilder(16 + simplified.size() * 24).append("LINESTRING (");
+        
+        for (int i = 0; i < simplified.size(); i++) {
             // WKT format is "longitude latitude" (note the space, not comma)
-            wktBuilder.append(point.get(0)).append(" ").append(point.get(1));
+            wktBuilder.append(simplified.longitude(i)).append(" ").append(simplified.latitude(i));
             
-            if (i < route.size() - 1) {
+            if (i < simplified.size() - 1) {
                 wktBuilder.append(", ");
             }
         }
@@ -0,0 +1,125 @@
+package com.pjr22.tripweather.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Refreshes popular gridpoint forecasts shortly before they expire, so the first user
+ * after expiry does not pay for the upstream round trip. Popularity is a decaying
+ * count of lookups per forecast URL. Refreshes run on a small pool of low-priority
+ * threads and only start while no user request is waiting on weather.gov; a refresh
+ * that finds one is deferred to the next run.
+ */
+@Component
+@Slf4j
+public class ForecastRefreshScheduler {
+
+    private final WeatherService weatherService;
+    private final boolean enabled;
+    private final Duration refreshAhead;
+    private final double minScore;
+    private final ThreadPoolExecutor refreshExecutor;
+
+    private final Map<String, Double> scores = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public ForecastRefreshScheduler(
+            WeatherService weatherService,
+            @Value("${weather.refresh.enabled:true}") boolean enabled,
+            @Value("${weather.refresh.ahead-seconds:180}") long refreshAheadSeconds,
+            @Value("${weather.refresh.min-score:3}") double minScore,
+            @Value("${weather.refresh.workers:2}") int workers) {
+        this.weatherService = weatherService;
+        this.enabled = enabled;
+        this.refreshAhead = Duration.ofSeconds(refreshAheadSeconds);
+        this.minScore = minScore;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 16), runnable -> {
+                    Thread thread = new Thread(runnable, "weather-refresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${weather.refresh.interval-ms:30000}")
+    public void refreshHotForecasts() {
+        if (!enabled) {
+            return;
+        }
+
+        // Halve the old scores each run so popularity reflects recent traffic
+        Map<String, Long> accesses = weatherService.drainForecastAccessCounts();
+        scores.replaceAll((url, score) -> score / 2);
+        accesses.forEach((url, count) -> scores.merge(url, (double) count, Double::sum));
+        scores.values().removeIf(score -> score < 0.5);
+
+        if (!weatherService.isUpstreamAvailable()) {
+            log.debug("Skipping forecast refresh while weather.gov is unavailable");
+            return;
+        }
+
+        if (weatherService.getInteractiveFetchesInFlight() > 0) {
+            log.debug("Deferring forecast refresh while user requests are waiting on weather.gov");
+            return;
+        }
+
+        int submitted = 0;
+        for (String forecastUrl : weatherService.getForecastsExpiringWithin(refreshAhead)) {
+            Double score = scores.get(forecastUrl);
+            if (score == null || score < minScore || !refreshing.add(forecastUrl)) {
+                continue;
+            }
+
+            try {
+                refreshExecutor.execute(() -> refresh(forecastUrl));
+                submitted++;
+            } catch (RejectedExecutionException e) {
+                // Queue is full; whatever is left will be picked up on the next run if still hot
+                refreshing.remove(forecastUrl);
+                break;
+            }
+        }
+
+        if (submitted > 0) {
+            log.info("Queued refresh of {} hot forecasts", submitted);
+        }
+    }
+
+    private void refresh(String forecastUrl) {
+        try {
+            // Queued refreshes wait for a quiet moment too; a deferred one is picked up
+            // again on the next run while it is still hot and about to expire
+            if (weatherService.getInteractiveFetchesInFlight() > 0) {
+                log.debug("Deferring refresh of {} while user requests are waiting on weather.gov", forecastUrl);
+                return;
+            }
+            weatherService.refreshForecast(forecastUrl);
+        } catch (Exception e) {
+            log.warn("Failed to refresh forecast {}: {}", forecastUrl, e.getMessage());
+        } finally {
+            refreshing.remove(forecastUrl);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.pjr22.tripweather.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pjr22.tripweather.cache.ExpiringCache;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local elevation lookups from SRTM HGT tiles, so most points never need an
+ * OpenRouteService call. Each tile covers one degree square and is named after its
+ * south-west corner, e.g. N38W120.hgt. It holds a grid of big-endian 16-bit
+ * elevations in meters, rows from north to south: 3601 x 3601 samples at 1 arc
+ * second or 1201 x 1201 at 3 arc seconds.
+ *
+ * Tiles are memory-mapped rather than read, so only the pages actually touched are
+ * loaded, and a bounded number of them are kept open in least recently used order.
+ */
+@Service
+@Slf4j
+public class HgtElevationService {
+
+    // Marks a sample with no data, e.g. over water in some SRTM releases
+    private static final short VOID = Short.MIN_VALUE;
+
+    private final Path directory;
+    private final int maxOpenTiles;
+    private final LinkedHashMap<Integer, Tile> tiles;
+    // Tiles known not to exist, so the directory is not checked again; at most 64800 entries
+    private final Set<Integer> missingTiles = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public HgtElevationService(
+            @Value("${elevation.hgt.directory:}") String directory,
+            @Value("${elevation.hgt.max-open-tiles:32}") int maxOpenTiles) {
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+        this.maxOpenTiles = Math.max(1, maxOpenTiles);
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+                if (size() > HgtElevationService.this.maxOpenTiles) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        if (this.directory == null) {
+            log.info("No HGT directory configured, elevations come from OpenRouteService only");
+        } else if (!Files.isDirectory(this.directory)) {
+            log.warn("HGT directory {} does not exist, elevations come from OpenRouteService only", directory);
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Elevation at a point, interpolated between the four surrounding samples
+     * @return Elevation in meters, or null if no tile covers the point or it has no data there
+     */
+    public Double getElevation(double latitude, double longitude) {
+        if (directory == null || !(latitude >= -90 && latitude < 90 && longitude >= -180 && longitude < 180)) {
+            return null;
+        }
+
+        int tileLatitude = (int) Math.floor(latitude);
+        int tileLongitude = (int) Math.floor(longitude);
+        Tile tile = getTile(tileLatitude, tileLongitude);
+        if (tile == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        // Fractional grid position; row 0 is the northern edge
+        int last = tile.samples() - 1;
+        double y = (tileLatitude + 1 - latitude) * last;
+        double x = (longitude - tileLongitude) * last;
+        int row = Math.min((int) y, last - 1);
+        int column = Math.min((int) x, last - 1);
+        double fy = y - row;
+        double fx = x - column;
+
+        double weighted = 0.0;
+        double weights = 0.0;
+        for (int dy = 0; dy <= 1; dy++) {
+            for (int dx = 0; dx <= 1; dx++) {
+                short sample = tile.sample(row + dy, column + dx);
+                if (sample == VOID) {
+                    continue;
+                }
+                double weight = (dy == 0 ? 1 - fy : fy) * (dx == 0 ? 1 - fx : fx);
+                weighted += weight * sample;
+                weights += weight;
+            }
+        }
+        // Without all four samples, interpolate between the ones that have data
+        return weights > 0 ? weighted / weights : null;
+    }
+
+    /**
+     * Lookups answered from a tile, and lookups with no tile; size is the number of open tiles
+     */
+    public ExpiringCache.CacheStats stats() {
+        int size;
+        synchronized (tiles) {
+            size = tiles.size();
+        }
+        return new ExpiringCache.CacheStats("hgt-tiles", size, maxOpenTiles, hits.get(), misses.get(),
+                evictions.get());
+    }
+
+    private Tile getTile(int latitude, int longitude) {
+        Integer key = (latitude + 90) * 360 + (longitude + 180);
+        if (missingTiles.contains(key)) {
+            return null;
+        }
+        synchronized (tiles) {
+            Tile tile = tiles.get(key);
+            if (tile != null) {
+                return tile;
+            }
+        }
+
+        // Opened outside the lock; two threads may both map a tile, which is harmless
+        Tile tile = openTile(latitude, longitude);
+        if (tile == null) {
+            missingTiles.add(key);
+            return null;
+        }
+        synchronized (tiles) {
+            Tile existing = tiles.putIfAbsent(key, tile);
+            return existing != null ? existing : tile;
+        }
+    }
+
+    /**
+     * @return The mapped tile, or null if there is no usable file for it
+     */
+    private Tile openTile(int latitude, int longitude) {
+        String name = String.format("%s%02d%s%03d.hgt", latitude >= 0 ? "N" : "S", Math.abs(latitude),
+                longitude >= 0 ? "E" : "W", Math.abs(longitude));
+        Path path = directory.resolve(name);
+        if (!Files.isRegularFile(path)) {
+            path = directory.resolve(name.toLowerCase());
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int samples = (int) Math.round(Math.sqrt(size / 2.0));
+            if (samples < 2 || (long) samples * samples * 2 != size) {
+                log.warn("Ignoring HGT tile {} with unexpected size {}", path, size);
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            log.debug("Mapped HGT tile {} ({} x {} samples)", path, samples, samples);
+            return new Tile(buffer, samples);
+        } catch (IOException e) {
+            log.warn("Could not map HGT tile {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * A mapped tile. Only absolute reads are used, so one buffer can be shared by all threads.
+     */
+    private record Tile(ByteBuffer buffer, int samples) {
+
+        short sample(int row, int column) {
+            return buffer.getShort((row * samples + column) * 2);
+        }
+    }
+}
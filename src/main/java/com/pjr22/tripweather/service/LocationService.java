@@ -1,12 +1,28 @@
 package com.pjr22.tripweather.service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pjr22.tripweather.cache.ExpiringCache;
+import com.pjr22.tripweather.cache.Geohash;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
 import com.pjr22.tripweather.model.LocationData;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -17,20 +33,81 @@ public class LocationService {
     private final RestClient restClient;
     private final String apiKey;
     private final String baseUrl;
+    private final InFlightRequestRegistry inFlightRequests;
+    // Runs elevation lookups alongside the geocode request, which stays on the caller's thread.
+    // The queue is bounded and drops its oldest task when full, so a slow elevation service
+    // cannot build a backlog that makes every later lookup time out too.
+    private final ThreadPoolExecutor elevationExecutor;
+    private final long elevationTimeoutMs;
+    // Resolved locations keyed by geohash cell, so nearby pin drops share one paid lookup.
+    // They are kept serialized, so every caller gets its own copy to change.
+    private final ExpiringCache<String, byte[]> reverseCache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int reversePrecision;
+    private final Duration noElevationTtl;
+
+    private static final String UPSTREAM_NAME = "geoapify";
 
     public LocationService(
           @Value("${geoapify.api.key}") String apiKey,
           @Value("${geoapify.base.url:https://api.geoapify.com/v1}") String baseUrl,
-          RouteService routeService
+          @Value("${geoapify.http.connect-timeout-ms:3000}") long connectTimeoutMs,
+          @Value("${geoapify.http.read-timeout-ms:5000}") long readTimeoutMs,
+          @Value("${geoapify.reverse.elevation-timeout-ms:2000}") long elevationTimeoutMs,
+          @Value("${geoapify.reverse.elevation-parallelism:4}") int elevationParallelism,
+          @Value("${geoapify.reverse.elevation-queue-size:16}") int elevationQueueSize,
+          @Value("${geoapify.reverse.cache.geohash-precision:8}") int reversePrecision,
+          @Value("${geoapify.reverse.cache.ttl-minutes:1440}") long reverseCacheTtlMinutes,
+          @Value("${geoapify.reverse.cache.max-size:10000}") int reverseCacheMaxSize,
+          @Value("${geoapify.reverse.cache.no-elevation-ttl-minutes:10}") long noElevationTtlMinutes,
+          RouteService routeService,
+          InFlightRequestRegistry inFlightRequests
     ) {
         this.apiKey = apiKey;
         this.baseUrl = baseUrl;
         this.routeService = routeService;
+        this.inFlightRequests = inFlightRequests;
+        this.elevationTimeoutMs = elevationTimeoutMs;
+        this.reversePrecision = Math.max(1, Math.min(Geohash.MAX_PRECISION, reversePrecision));
+        this.reverseCache = new ExpiringCache<>("geoapify-reverse", reverseCacheMaxSize,
+                Duration.ofMinutes(reverseCacheTtlMinutes));
+        this.noElevationTtl = Duration.ofMinutes(noElevationTtlMinutes);
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
         this.restClient = RestClient.builder()
                 .baseUrl(this.baseUrl)
+                .requestFactory(requestFactory)
                 .build();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, elevationParallelism);
+        this.elevationExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, elevationQueueSize)), runnable -> {
+                    Thread thread = new Thread(runnable, "location-elevation-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardOldestPolicy());
     }
 
+    @PreDestroy
+    public void shutdown() {
+        elevationExecutor.shutdownNow();
+    }
+
+    /**
+     * Hit/miss counters for the reverse geocode cache
+     */
+    public List<ExpiringCache.CacheStats> getCacheStats() {
+        return List.of(reverseCache.stats());
+    }
+
+    /**
+     * Reverse geocode a point. Results are cached per geohash cell, so any point in a cell
+     * that was already resolved gets that result, including its elevation, without a new
+     * upstream request.
+     */
     public LocationData reverseGeocode(double latitude, double longitude) {
         String url = String.format("/geocode/reverse?lat=%.6f&lon=%.6f&apiKey=%s", latitude, longitude, apiKey);
         try {
@@ -38,17 +115,56 @@ public class LocationService {
                 return null;
             }
 
-            Double elevation = routeService.getElevation(latitude, longitude);
-            LocationData locationData = restClient.get()
-                    .uri(url)
-                    .retrieve()
-                    .body(LocationData.class);
-
-            if (elevation != null) {
-               locationData.getFeatures().get(0).getGeometry().getCoordinates().add(elevation);
+            String cell = Geohash.encode(latitude, longitude, reversePrecision);
+            byte[] cached = reverseCache.get(cell);
+            if (cached != null) {
+                return readLocation(cached);
             }
 
-            return locationData;
+            // Callers joining a lookup for the same cell share the result, so it is completed
+            // (elevation included) before it is handed out, and each decodes its own copy
+            return readLocation(inFlightRequests.execute(UPSTREAM_NAME, "reverse:" + cell, () -> {
+                // Elevation runs alongside the geocode request with its own deadline, so a pin
+                // drop waits for the slower of the two, and a slow elevation only loses the altitude.
+                // The deadline also covers a task dropped from the queue.
+                CompletableFuture<Double> elevation = new CompletableFuture<Double>()
+                        .completeOnTimeout(null, elevationTimeoutMs, TimeUnit.MILLISECONDS);
+                elevationExecutor.execute(() -> {
+                    if (elevation.isDone()) {
+                        // Timed out while queued, so nobody is waiting for it
+                        return;
+                    }
+                    try {
+                        elevation.complete(routeService.getElevation(latitude, longitude));
+                    } catch (RuntimeException e) {
+                        log.warn("Elevation lookup failed for {},{}: {}", latitude, longitude, e.getMessage());
+                        elevation.complete(null);
+                    }
+                });
+
+                LocationData locationData = restClient.get()
+                        .uri(url)
+                        .retrieve()
+                        .body(LocationData.class);
+
+                if (locationData == null || locationData.getFeatures() == null
+                        || locationData.getFeatures().isEmpty()) {
+                    return writeLocation(locationData);
+                }
+
+                Double altitude = elevation.join();
+                if (altitude != null) {
+                    locationData.getFeatures().get(0).getGeometry().getCoordinates().add(altitude);
+                }
+                byte[] serialized = writeLocation(locationData);
+                if (altitude != null) {
+                    reverseCache.put(cell, serialized);
+                } else {
+                    // Kept briefly, so a missed elevation is retried soon
+                    reverseCache.put(cell, serialized, noElevationTtl);
+                }
+                return serialized;
+            }));
          } catch (Exception e) {
             log.info("Failed to get formatted location info from: {}", url);
             log.error("Reverse GeoCode request failed.", e);
@@ -56,6 +172,21 @@ public class LocationService {
         }
     }
 
+    private byte[] writeLocation(LocationData locationData) {
+        if (locationData == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsBytes(locationData);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private LocationData readLocation(byte[] serialized) throws IOException {
+        return serialized == null ? null : objectMapper.readValue(serialized, LocationData.class);
+    }
+
     public JsonNode searchLocations(String searchText) {
         try {
             if (apiKey == null || apiKey.isEmpty()) {
@@ -65,10 +196,11 @@ public class LocationService {
             String url = String.format("/geocode/search?apiKey=%s&text=%s",
                     apiKey, searchText);
 
-            JsonNode response = restClient.get()
+            JsonNode response = inFlightRequests.execute(UPSTREAM_NAME, "search:" + searchText,
+                    () -> restClient.get()
                     .uri(url)
                     .retrieve()
-                    .body(JsonNode.class);
+                    .body(JsonNode.class));
 
             return response;
         } catch (Exception e) {
@@ -1,24 +1,42 @@
 package com.pjr22.tripweather.service;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pjr22.tripweather.Utils;
+import com.pjr22.tripweather.cache.ExpiringCache;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
 import com.pjr22.tripweather.model.LocationData;
 import com.pjr22.tripweather.model.RouteData;
+import com.pjr22.tripweather.model.RouteGeometry;
+import com.pjr22.tripweather.model.RouteTimeline;
 
+import jakarta.annotation.PreDestroy;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -33,74 +51,376 @@ public class RouteService {
    private final String apiKey;
    private final String baseUrl;
    private final ObjectMapper objectMapper;
-
+   private final InFlightRequestRegistry inFlightRequests;
+   private final HgtElevationService hgtElevationService;
+   private final ExpiringCache<String, Directions> directionsCache;
+   private final ExpiringCache<String, Directions> legCache;
+   private final ExecutorService legExecutor;
+   private final int maxLegRequests;
+   private final double[] detailTolerances;
+   private final double coordinateScale;
+   private final ExpiringCache<Long, Double> elevationCache;
+   private final ExpiringCache<Long, SnappedPoint> snapCache;
+   private final Duration notSnappedTtl;
+   private final double snapScale;
+   private final int snapRadiusMeters;
+   private final int maxSnapLocations;
+   private final double elevationGridArcSeconds;
+   private final int maxElevationPoints;
+
+   private static final JsonFactory JSON_FACTORY = new JsonFactory();
+   private static final String UPSTREAM_NAME = "openrouteservice";
+   // Cached for points ORS could not snap to a road
+   private static final SnappedPoint NOT_SNAPPED = new SnappedPoint(Double.NaN, Double.NaN, null);
    private static final String DIRECTIONS_ENDPOINT = "/v2/directions/driving-car/geojson";
    private static final String ELEVATION_ENDPOINT = "/elevation/point";
+   private static final String ELEVATION_LINE_ENDPOINT = "/elevation/line";
    private static final String SNAP_ENDPOINT = "/v2/snap/driving-car/geojson";
 
    public RouteService(
          @Value("${openrouteservice.api.key}") String apiKey,
-         @Value("${openrouteservice.base.url:https://api.openrouteservice.org}") String baseUrl
+         @Value("${openrouteservice.base.url:https://api.openrouteservice.org}") String baseUrl,
+         @Value("${openrouteservice.directions.cache.ttl-minutes:60}") long directionsCacheTtlMinutes,
+         @Value("${openrouteservice.directions.cache.max-size:500}") int directionsCacheMaxSize,
+         @Value("${openrouteservice.directions.cache.decimal-places:5}") int coordinateDecimalPlaces,
+         @Value("${openrouteservice.directions.leg-cache.max-size:5000}") int legCacheMaxSize,
+         @Value("${openrouteservice.directions.max-leg-requests:4}") int maxLegRequests,
+         @Value("${openrouteservice.directions.detail-tolerances-meters:5,20,80,320,1280}") double[] detailTolerances,
+         @Value("${openrouteservice.elevation.cache.ttl-minutes:10080}") long elevationCacheTtlMinutes,
+         @Value("${openrouteservice.elevation.cache.max-size:100000}") int elevationCacheMaxSize,
+         @Value("${openrouteservice.elevation.cache.grid-arc-seconds:1}") double elevationGridArcSeconds,
+         @Value("${openrouteservice.elevation.max-points-per-request:2000}") int maxElevationPoints,
+         @Value("${openrouteservice.snap.cache.ttl-minutes:1440}") long snapCacheTtlMinutes,
+         @Value("${openrouteservice.snap.cache.max-size:20000}") int snapCacheMaxSize,
+         @Value("${openrouteservice.snap.cache.decimal-places:4}") int snapDecimalPlaces,
+         @Value("${openrouteservice.snap.cache.not-snapped-ttl-minutes:10}") long notSnappedTtlMinutes,
+         @Value("${openrouteservice.snap.radius-meters:10000}") int snapRadiusMeters,
+         @Value("${openrouteservice.snap.max-locations-per-request:500}") int maxSnapLocations,
+         InFlightRequestRegistry inFlightRequests,
+         HgtElevationService hgtElevationService
    ) {
       this.apiKey = apiKey;
       this.baseUrl = baseUrl;
       this.restClient = RestClient.builder().baseUrl(this.baseUrl).build();
       this.objectMapper = new ObjectMapper();
+      this.inFlightRequests = inFlightRequests;
+      this.hgtElevationService = hgtElevationService;
+      this.directionsCache = new ExpiringCache<>("ors-directions", directionsCacheMaxSize,
+            Duration.ofMinutes(directionsCacheTtlMinutes));
+      this.coordinateScale = Math.pow(10, coordinateDecimalPlaces);
+      this.legCache = new ExpiringCache<>("ors-directions-legs", legCacheMaxSize,
+            Duration.ofMinutes(directionsCacheTtlMinutes));
+      this.maxLegRequests = maxLegRequests;
+      this.detailTolerances = detailTolerances.clone();
+      Arrays.sort(this.detailTolerances);
+      this.elevationCache = new ExpiringCache<>("ors-elevation", elevationCacheMaxSize,
+            Duration.ofMinutes(elevationCacheTtlMinutes));
+      this.elevationGridArcSeconds = elevationGridArcSeconds;
+      this.maxElevationPoints = Math.max(2, maxElevationPoints);
+      this.snapCache = new ExpiringCache<>("ors-snap", snapCacheMaxSize, Duration.ofMinutes(snapCacheTtlMinutes));
+      this.notSnappedTtl = Duration.ofMinutes(notSnappedTtlMinutes);
+      this.snapScale = Math.pow(10, snapDecimalPlaces);
+      this.snapRadiusMeters = snapRadiusMeters;
+      this.maxSnapLocations = Math.max(1, maxSnapLocations);
+
+      AtomicInteger threadCount = new AtomicInteger();
+      this.legExecutor = Executors.newFixedThreadPool(Math.max(1, maxLegRequests), runnable -> {
+         Thread thread = new Thread(runnable, "ors-directions-" + threadCount.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   @PreDestroy
+   public void shutdown() {
+      legExecutor.shutdownNow();
    }
 
    public LocationData snapToLocation(double latitude, double longitude) {
+      if (apiKey == null || apiKey.isEmpty()) {
+         return null;
+      }
+      return snapToLocations(new double[] { latitude }, new double[] { longitude });
+   }
+
+   /**
+    * Snap many points to the road network with as few upstream calls as possible.
+    * Results are cached by rounded coordinates; points that could not be snapped are
+    * only remembered briefly. The remaining points are sent to ORS in batches.
+    * @return One feature per snapped point, in input order, with source_id set to the
+    *         point's index; points that could not be snapped are left out, as ORS does
+    */
+   public LocationData snapToLocations(double[] latitudes, double[] longitudes) {
+      SnappedPoint[] snapped = new SnappedPoint[latitudes.length];
+      Map<Long, List<Integer>> missing = new LinkedHashMap<>();
+      for (int i = 0; i < latitudes.length; i++) {
+         long key = getSnapKey(latitudes[i], longitudes[i]);
+         SnappedPoint cached = snapCache.get(key);
+         if (cached != null) {
+            snapped[i] = cached;
+         } else {
+            missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+         }
+      }
+
+      if (!missing.isEmpty() && apiKey != null && !apiKey.isEmpty()) {
+         // The first point seen with each key stands in for the others
+         List<List<Integer>> groups = new ArrayList<>(missing.values());
+         List<Long> keys = new ArrayList<>(missing.keySet());
+         for (int from = 0; from < groups.size(); from += maxSnapLocations) {
+            int to = Math.min(groups.size(), from + maxSnapLocations);
+            List<List<Double>> locations = new ArrayList<>(to - from);
+            for (int j = from; j < to; j++) {
+               int index = groups.get(j).get(0);
+               locations.add(List.of(longitudes[index], latitudes[index]));
+            }
+
+            SnappedPoint[] fetched = fetchSnappedPoints(locations);
+            if (fetched == null) {
+               continue;
+            }
+            for (int j = from; j < to; j++) {
+               // A missing point may be a quirk of one response, so it is retried soon
+               SnappedPoint point = fetched[j - from];
+               if (point == NOT_SNAPPED) {
+                  snapCache.put(keys.get(j), point, notSnappedTtl);
+               } else {
+                  snapCache.put(keys.get(j), point);
+               }
+               for (int index : groups.get(j)) {
+                  snapped[index] = point;
+               }
+            }
+         }
+      }
+
+      List<LocationData.Feature> features = new ArrayList<>();
+      for (int i = 0; i < snapped.length; i++) {
+         SnappedPoint point = snapped[i];
+         if (point == null || point == NOT_SNAPPED) {
+            continue;
+         }
+         // Distance is measured from this point, not the one the cached result came from
+         double distance = RouteGeometry.distanceMeters(latitudes[i], longitudes[i], point.latitude(),
+               point.longitude());
+         features.add(new LocationData.Feature()
+               .setType("Feature")
+               .setProperties(new LocationData.Properties()
+                     .setName(point.name())
+                     .setSourceId(i)
+                     .setSnappedDistance(Math.round(distance * 100) / 100.0))
+               .setGeometry(new LocationData.Geometry()
+                     .setType("Point")
+                     .setCoordinates(List.of(point.longitude(), point.latitude()))));
+      }
+      return new LocationData().setType("FeatureCollection").setFeatures(features);
+   }
+
+   /**
+    * Snap one batch of [longitude, latitude] locations
+    * @return The result for each location, NOT_SNAPPED where ORS found no road, or
+    *         null if the request failed or the response had no features at all
+    */
+   private SnappedPoint[] fetchSnappedPoints(List<List<Double>> locations) {
       try {
-          if (apiKey == null || apiKey.isEmpty()) {
-              return null;
-          }
-          
-          // {"locations":[[8.669629,49.413025],[8.675841,49.418532],[8.665144,49.415594]],"radius":350}'
-          Map<String, Object> body = new HashMap<>();
-          body.put("locations", List.of(List.of(longitude, latitude)));
-          body.put("radius", Integer.valueOf(10000));
-
-          LocationData locationData = restClient.post()
-                  .uri(SNAP_ENDPOINT)
-                  .body(body)
-                  .header("Authorization", apiKey)
-                  .header("Content-Type", "application/json")
-                  .retrieve()
-                  .toEntity(LocationData.class)
-                  .getBody();
-
-          return locationData;
-       } catch (Exception e) {
-          log.info("Failed to get snap location info from: {}", SNAP_ENDPOINT);
-          log.error("Snap request failed.", e);
-          return null;
+         // {"locations":[[8.669629,49.413025],[8.675841,49.418532],[8.665144,49.415594]],"radius":350}'
+         Map<String, Object> body = new HashMap<>();
+         body.put("locations", locations);
+         body.put("radius", Integer.valueOf(snapRadiusMeters));
+
+         String flightKey = SNAP_ENDPOINT + "?radius=" + snapRadiusMeters + '|' + getCoordinatesKey(locations);
+         LocationData locationData = inFlightRequests.execute(UPSTREAM_NAME, flightKey,
+               () -> restClient.post()
+               .uri(SNAP_ENDPOINT)
+               .body(body)
+               .header("Authorization", apiKey)
+               .header("Content-Type", "application/json")
+               .retrieve()
+               .toEntity(LocationData.class)
+               .getBody());
+
+         if (locationData == null || locationData.getFeatures() == null) {
+            log.warn("Snap response for {} locations had no features", locations.size());
+            return null;
+         }
+
+         SnappedPoint[] snapped = new SnappedPoint[locations.size()];
+         Arrays.fill(snapped, NOT_SNAPPED);
+         for (LocationData.Feature feature : locationData.getFeatures()) {
+            Integer sourceId = feature.getProperties() != null ? feature.getProperties().getSourceId() : null;
+            List<Double> coordinates = feature.getGeometry() != null ? feature.getGeometry().getCoordinates() : null;
+            if (sourceId == null || sourceId < 0 || sourceId >= snapped.length
+                  || coordinates == null || coordinates.size() < 2) {
+               continue;
+            }
+            snapped[sourceId] = new SnappedPoint(coordinates.get(0), coordinates.get(1),
+                  feature.getProperties().getName());
+         }
+         return snapped;
+      } catch (Exception e) {
+         log.info("Failed to get snap location info from: {}", SNAP_ENDPOINT);
+         log.error("Snap request failed.", e);
+         return null;
       }
    }
 
+   /**
+    * Cache key for a snap request: the point rounded to the snap cache precision
+    */
+   private long getSnapKey(double latitude, double longitude) {
+      long row = Math.round(latitude * snapScale);
+      long column = Math.round(longitude * snapScale);
+      return (row << 32) | (column & 0xffffffffL);
+   }
+
    // https://localhost:5000/elevation/point?geometry=13.349762,38.11295
    public Double getElevation(double latitude, double longitude) {
+      return getElevations(new double[] { latitude }, new double[] { longitude })[0];
+   }
+
+   /**
+    * Elevations for many points with as few upstream calls as possible. Local HGT
+    * tiles are used where they cover a point. Otherwise results are cached on a grid
+    * of about 30 m and points in the same cell share one lookup; the remaining points
+    * are sent to the ORS line endpoint in large batches.
+    * @return Elevation in meters for each point, null where it could not be determined
+    */
+   public Double[] getElevations(double[] latitudes, double[] longitudes) {
+      Double[] elevations = new Double[latitudes.length];
+      Map<Long, List<Integer>> missing = new LinkedHashMap<>();
+      for (int i = 0; i < latitudes.length; i++) {
+         Double local = hgtElevationService.getElevation(latitudes[i], longitudes[i]);
+         if (local != null) {
+            elevations[i] = local;
+            continue;
+         }
+         long key = getElevationKey(latitudes[i], longitudes[i]);
+         Double cached = elevationCache.get(key);
+         if (cached != null) {
+            elevations[i] = cached;
+         } else {
+            missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+         }
+      }
+      if (missing.isEmpty() || apiKey == null || apiKey.isEmpty()) {
+         return elevations;
+      }
+
+      // The first point seen in each cell stands in for the whole cell
+      List<List<Integer>> cells = new ArrayList<>(missing.values());
+      List<Long> keys = new ArrayList<>(missing.keySet());
+      for (int from = 0; from < cells.size(); from += maxElevationPoints) {
+         int to = Math.min(cells.size(), from + maxElevationPoints);
+         double[] batchLatitudes = new double[to - from];
+         double[] batchLongitudes = new double[to - from];
+         for (int j = from; j < to; j++) {
+            int index = cells.get(j).get(0);
+            batchLatitudes[j - from] = latitudes[index];
+            batchLongitudes[j - from] = longitudes[index];
+         }
+
+         Double[] fetched = fetchElevations(batchLatitudes, batchLongitudes);
+         for (int j = from; j < to; j++) {
+            Double elevation = fetched[j - from];
+            if (elevation == null) {
+               continue;
+            }
+            elevationCache.put(keys.get(j), elevation);
+            for (int index : cells.get(j)) {
+               elevations[index] = elevation;
+            }
+         }
+      }
+      return elevations;
+   }
+
+   private Double[] fetchElevations(double[] latitudes, double[] longitudes) {
+      Double[] elevations = new Double[latitudes.length];
+      if (latitudes.length == 1) {
+         elevations[0] = fetchElevation(latitudes[0], longitudes[0]);
+         return elevations;
+      }
+
       try {
-         if (apiKey == null || apiKey.isEmpty()) {
-            return null;
-        }
-
-        String url = String.format(ELEVATION_ENDPOINT + "?geometry=%s,%s", longitude, latitude);
-        LocationData.Feature feature = restClient.get()
-              .uri(url)
-              .header("Authorization", apiKey)
-              .retrieve()
-              .body(LocationData.Feature.class);
-        
-        return Double.valueOf(feature.getGeometry().getCoordinates().get(2));
-        
+         List<List<Double>> coordinates = new ArrayList<>(latitudes.length);
+         for (int i = 0; i < latitudes.length; i++) {
+            coordinates.add(List.of(longitudes[i], latitudes[i]));
+         }
+         Map<String, Object> body = new HashMap<>();
+         body.put("format_in", "polyline");
+         body.put("format_out", "polyline");
+         body.put("geometry", coordinates);
+
+         ElevationLine line = inFlightRequests.execute(UPSTREAM_NAME,
+               ELEVATION_LINE_ENDPOINT + '|' + getCoordinatesKey(coordinates),
+               () -> restClient.post()
+               .uri(ELEVATION_LINE_ENDPOINT)
+               .header("Authorization", apiKey)
+               .header("Content-Type", "application/json")
+               .body(body)
+               .retrieve()
+               .body(ElevationLine.class));
+
+         RouteGeometry geometry = line != null ? line.geometry() : null;
+         if (geometry == null || geometry.size() != latitudes.length || !geometry.hasElevation()) {
+            log.warn("Elevation line response did not match the {} requested points", latitudes.length);
+            return elevations;
+         }
+         for (int i = 0; i < latitudes.length; i++) {
+            double elevation = geometry.elevation(i);
+            elevations[i] = Double.isNaN(elevation) ? null : elevation;
+         }
+      } catch (Exception e) {
+         log.warn("Elevation lookup for {} points failed: {}", latitudes.length, e.getMessage());
+      }
+      return elevations;
+   }
+
+   private Double fetchElevation(double latitude, double longitude) {
+      try {
+         String url = String.format(ELEVATION_ENDPOINT + "?geometry=%s,%s", longitude, latitude);
+         LocationData.Feature feature = inFlightRequests.execute(UPSTREAM_NAME, url,
+               () -> restClient.get()
+               .uri(url)
+               .header("Authorization", apiKey)
+               .retrieve()
+               .body(LocationData.Feature.class));
+
+         return Double.valueOf(feature.getGeometry().getCoordinates().get(2));
+
       } catch (Exception e) {
          return null;
       }
    }
 
+   /**
+    * Cache key for the elevation grid cell containing a point. Cells are a fixed
+    * number of arc seconds on each side, about 30 m per arc second of latitude.
+    */
+   private long getElevationKey(double latitude, double longitude) {
+      long row = Math.round(latitude * 3600 / elevationGridArcSeconds);
+      long column = Math.round(longitude * 3600 / elevationGridArcSeconds);
+      return (row << 32) | (column & 0xffffffffL);
+   }
+
    public RouteData calculateRoute(
          List<RouteRequest.Waypoint> waypoints,
          ZonedDateTime departureDateTime,
          List<Integer> durations
+   ) {
+      return calculateRoute(waypoints, departureDateTime, durations, null);
+   }
+
+   /**
+    * Calculate a route, optionally simplifying its geometry for display
+    * @param toleranceMeters Maximum distance a dropped vertex may lie from the simplified line;
+    *                        null or 0 returns the full geometry. Waypoints and leg boundaries are always kept.
+    */
+   public RouteData calculateRoute(
+         List<RouteRequest.Waypoint> waypoints,
+         ZonedDateTime departureDateTime,
+         List<Integer> durations,
+         Double toleranceMeters
    ) {
       try {
          if (apiKey == null || apiKey.isEmpty()) {
@@ -111,28 +431,17 @@ public class RouteService {
             return createErrorRoute("At least 2 waypoints are required for routing");
          }
 
-         // Prepare request body for OpenRouteService
-         RouteRequest request = new RouteRequest();
-         request.setCoordinates(convertWaypointsToCoordinates(waypoints));
-         request.setRadiuses(List.of(-1));
-         request.setElevation(true);
-
-         String requestBody = objectMapper.writeValueAsString(request);
+         Directions directions = getDirections(waypoints);
+         if (directions == null) {
+            return createErrorRoute("No features found in response");
+         }
 
-         JsonNode response = restClient.post()
-               .uri(DIRECTIONS_ENDPOINT)
-               .header("Authorization", apiKey)
-               .header("Content-Type", "application/json")
-               .body(requestBody)
-               .retrieve()
-               .body(JsonNode.class);
-         
          ZonedDateTime now = ZonedDateTime.now(departureDateTime.getZone());
          if (departureDateTime.isBefore(now)) {
             departureDateTime = now;
          }
 
-         return parseRouteResponseWithArrivalTimesAndDurations(response, waypoints, departureDateTime, durations);
+         return createRouteData(directions, waypoints, departureDateTime, durations, toleranceMeters);
 
       } catch (Exception e) {
          return createErrorRoute("Failed to calculate route: " + e.getMessage());
@@ -140,219 +449,484 @@ public class RouteService {
    }
 
    /**
-    * Add minutes to a datetime string in the specified timezone
+    * Hit/miss counters for the directions, snap and elevation caches, and the local elevation tiles
+    */
+   public List<ExpiringCache.CacheStats> getCacheStats() {
+      return List.of(directionsCache.stats(), legCache.stats(), snapCache.stats(), elevationCache.stats(),
+            hgtElevationService.stats());
+   }
+
+   /**
+    * Get the road route through the waypoints. Directions only depend on the waypoint
+    * coordinates, so changing the departure time or a stop duration is served from
+    * the cache and only the arrival times are recomputed.
+    *
+    * Each leg is also cached by its (from, to) pair. When the route changes, only the
+    * legs whose endpoints changed are requested, in parallel, and the rest are reused;
+    * if too many legs are missing the whole route is requested at once instead.
+    *
+    * The significance of every vertex is computed once here and cached with the
+    * directions, so any level of detail can be served without another pass.
+    */
+   private Directions getDirections(List<RouteRequest.Waypoint> waypoints) {
+      List<List<Double>> coordinates = convertWaypointsToCoordinates(waypoints);
+      String cacheKey = getCoordinatesKey(coordinates);
+      Directions cached = directionsCache.get(cacheKey);
+      if (cached != null) {
+         return cached;
+      }
+
+      int legCount = coordinates.size() - 1;
+      Directions[] legs = new Directions[legCount];
+      List<Integer> missingLegs = new ArrayList<>();
+      for (int i = 0; i < legCount; i++) {
+         legs[i] = legCache.get(getCoordinatesKey(coordinates.subList(i, i + 2)));
+         // Elevation is always requested, so a leg without it is asked for again
+         if (legs[i] == null || !legs[i].geometry().hasElevation()) {
+            missingLegs.add(i);
+         }
+      }
+
+      Directions directions;
+      if (missingLegs.size() > maxLegRequests) {
+         directions = fetchDirections(coordinates);
+         if (directions == null) {
+            return null;
+         }
+         List<Directions> fetchedLegs = splitIntoLegs(directions);
+         for (int i = 0; fetchedLegs != null && i < legCount; i++) {
+            legCache.put(getCoordinatesKey(coordinates.subList(i, i + 2)), fetchedLegs.get(i));
+         }
+      } else {
+         List<CompletableFuture<Directions>> requests = new ArrayList<>(missingLegs.size());
+         for (int i : missingLegs) {
+            List<List<Double>> legCoordinates = coordinates.subList(i, i + 2);
+            requests.add(CompletableFuture.supplyAsync(() -> fetchDirections(legCoordinates), legExecutor));
+         }
+         for (int k = 0; k < missingLegs.size(); k++) {
+            int i = missingLegs.get(k);
+            legs[i] = join(requests.get(k));
+            if (legs[i] == null) {
+               return null;
+            }
+            legCache.put(getCoordinatesKey(coordinates.subList(i, i + 2)), legs[i]);
+         }
+         directions = stitchLegs(legs);
+      }
+
+      directions = directions.withSignificance(
+            directions.geometry().significance(getPreservedVertices(directions, legCount)));
+      directionsCache.put(cacheKey, directions);
+      return directions;
+   }
+
+   private Directions fetchDirections(List<List<Double>> coordinates) {
+      // Prepare request body for OpenRouteService
+      RouteRequest request = new RouteRequest();
+      request.setCoordinates(coordinates);
+      request.setRadiuses(List.of(-1));
+      request.setElevation(true);
+
+      String requestBody;
+      try {
+         requestBody = objectMapper.writeValueAsString(request);
+      } catch (JsonProcessingException e) {
+         throw new IllegalStateException("Failed to write directions request", e);
+      }
+
+      return inFlightRequests.execute(UPSTREAM_NAME, DIRECTIONS_ENDPOINT + '|' + getCoordinatesKey(coordinates),
+            () -> restClient.post()
+            .uri(DIRECTIONS_ENDPOINT)
+            .header("Authorization", apiKey)
+            .header("Content-Type", "application/json")
+            .body(requestBody)
+            .exchange((clientRequest, response) -> {
+               if (response.getStatusCode().isError()) {
+                  throw new RestClientResponseException("Directions request failed", response.getStatusCode(),
+                        response.getStatusText(), response.getHeaders(), response.getBody().readAllBytes(), null);
+               }
+               try (JsonParser parser = JSON_FACTORY.createParser(response.getBody())) {
+                  return new DirectionsReader(parser).read();
+               }
+            }));
+   }
+
+   /**
+    * Vertices no simplification may drop: the leg boundaries, or the raw ORS way points
+    * if they do not describe the legs
     */
-   private String addMinutesToDateTime(String dateTimeStr, String timezone, Integer minutes) {
+   private int[] getPreservedVertices(Directions directions, int legs) {
+      int[] boundaries = RouteTimeline.boundariesFromWayPoints(directions.wayPoints(), legs,
+            directions.geometry().size());
+      return boundaries != null ? boundaries : directions.wayPoints().stream().mapToInt(Integer::intValue).toArray();
+   }
+
+   private <T> T join(CompletableFuture<T> future) {
       try {
-         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-         LocalDateTime localDateTime = LocalDateTime.parse(dateTimeStr, formatter);
+         return future.join();
+      } catch (CompletionException e) {
+         if (e.getCause() instanceof RuntimeException cause) {
+            throw cause;
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Split a multi-waypoint route into one Directions per leg using the ORS
+    * way_points, which index the waypoints in the geometry
+    * @return The legs, or null if the response does not describe its legs
+    */
+   private List<Directions> splitIntoLegs(Directions directions) {
+      List<Integer> wayPoints = directions.wayPoints();
+      List<RouteData.RouteSegment> segments = directions.segments();
+      if (wayPoints.size() != segments.size() + 1 || wayPoints.get(wayPoints.size() - 1) >= directions.geometry().size()) {
+         return null;
+      }
 
-         ZoneId zoneId = ZoneId.of(timezone);
-         ZonedDateTime zonedDateTime = localDateTime.atZone(zoneId);
-         ZonedDateTime resultZonedDateTime = zonedDateTime.plusMinutes(minutes);
+      List<Directions> legs = new ArrayList<>(segments.size());
+      for (int i = 0; i < segments.size(); i++) {
+         int from = wayPoints.get(i);
+         int to = wayPoints.get(i + 1);
+         if (to < from) {
+            return null;
+         }
+         RouteData.RouteSegment segment = segments.get(i);
+         legs.add(new Directions(directions.geometry().slice(from, to),
+               segment.getDistance(), segment.getDuration(), List.of(segment), List.of(0, to - from), null));
+      }
+      return legs;
+   }
 
-         return resultZonedDateTime.format(formatter);
-      } catch (Exception e) {
-         System.err.println("Error adding minutes to datetime: " + e.getMessage());
-         return dateTimeStr; // Return original if addition fails
+   /**
+    * Join consecutive legs into one route. Each leg starts where the previous one
+    * ended, so the shared vertex is only kept once. If only some legs have elevations,
+    * the route keeps them and the vertices of the other legs have an unknown elevation.
+    */
+   private Directions stitchLegs(Directions[] legs) {
+      int expectedSize = 0;
+      boolean hasElevation = false;
+      for (Directions leg : legs) {
+         expectedSize += leg.geometry().size();
+         hasElevation |= leg.geometry().hasElevation();
+      }
+
+      RouteGeometry.Builder geometry = RouteGeometry.builder(expectedSize, hasElevation);
+      List<RouteData.RouteSegment> segments = new ArrayList<>(legs.length);
+      List<Integer> wayPoints = new ArrayList<>(legs.length + 1);
+      Double distance = null;
+      Double duration = null;
+
+      for (Directions leg : legs) {
+         RouteGeometry legGeometry = leg.geometry();
+         if (geometry.size() == 0) {
+            geometry.addAll(legGeometry, 0);
+            wayPoints.add(0);
+         } else {
+            geometry.addAll(legGeometry, 1);
+         }
+         wayPoints.add(Math.max(0, geometry.size() - 1));
+         segments.addAll(leg.segments());
+         if (leg.distance() != null) {
+            distance = (distance == null ? 0 : distance) + leg.distance();
+         }
+         if (leg.duration() != null) {
+            duration = (duration == null ? 0 : duration) + leg.duration();
+         }
+      }
+
+      return new Directions(geometry.build(), distance, duration,
+            Collections.unmodifiableList(segments), Collections.unmodifiableList(wayPoints), null);
+   }
+
+   /**
+    * Key for a list of [longitude, latitude] coordinates, in order. Directions are
+    * cached under it: their coordinates are rounded to the cache precision, and the
+    * rounded values are also what is sent to ORS, so every request sharing a key really
+    * does produce the same route. It also identifies identical in-flight requests.
+    */
+   private String getCoordinatesKey(List<List<Double>> coordinates) {
+      StringBuilder key = new StringBuilder(coordinates.size() * 24);
+      for (List<Double> coordinate : coordinates) {
+         key.append(coordinate.get(0)).append(',').append(coordinate.get(1)).append(';');
       }
+      return key.toString();
+   }
+
+   private double roundCoordinate(double value) {
+      return Math.round(value * coordinateScale) / coordinateScale;
    }
 
    private List<List<Double>> convertWaypointsToCoordinates(List<RouteRequest.Waypoint> waypoints) {
       List<List<Double>> coordinates = new ArrayList<>();
       for (RouteRequest.Waypoint waypoint : waypoints) {
          List<Double> coord = new ArrayList<>();
-         coord.add(waypoint.getLongitude());
-         coord.add(waypoint.getLatitude());
+         coord.add(roundCoordinate(waypoint.getLongitude()));
+         coord.add(roundCoordinate(waypoint.getLatitude()));
          coordinates.add(coord);
       }
       return coordinates;
    }
 
-   private RouteData parseRouteResponseWithArrivalTimesAndDurations(JsonNode response,
-         List<RouteRequest.Waypoint> originalWaypoints, ZonedDateTime departureDateTime, List<Integer> durations) {
-      try {
-         // First, parse the basic route information (geometry, segments, etc.)
-         JsonNode features = response.get("features");
-         if (features == null || !features.isArray() || features.size() == 0) {
-            return createErrorRoute("No features found in response");
-         }
-
-         JsonNode firstFeature = features.get(0);
-
-         // Extract geometry from the feature
-         JsonNode geometryNode = firstFeature.get("geometry");
-         List<List<Double>> geometry = new ArrayList<>();
-         if (geometryNode != null && geometryNode.has("coordinates")) {
-            JsonNode coordinates = geometryNode.get("coordinates");
-            if (coordinates.isArray()) {
-               for (JsonNode coord : coordinates) {
-                  if (coord.isArray() && coord.size() > 1) {
-                     List<Double> point = new ArrayList<>();
-                     point.add(coord.get(0).asDouble()); // longitude
-                     point.add(coord.get(1).asDouble()); // latitude
-                     if (coord.size() > 2) {
-                        point.add(coord.get(2).asDouble()); // elevation)
-                     }
-                     geometry.add(point);
-                  }
-               }
-            }
-         }
-
-         // Extract summary from properties
-         JsonNode properties = firstFeature.get("properties");
-         Double distance = null;
-         Double duration = null;
-         List<RouteData.RouteSegment> segments = new ArrayList<>();
+   /**
+    * Combine cached directions with the timing of this particular request. Times are
+    * computed once as epoch seconds for every waypoint and geometry vertex, and only
+    * formatted in each waypoint's timezone when the response is built.
+    */
+   private RouteData createRouteData(Directions directions, List<RouteRequest.Waypoint> originalWaypoints,
+         ZonedDateTime departureDateTime, List<Integer> durations, Double toleranceMeters) {
+      RouteGeometry geometry = directions.geometry();
+      List<RouteData.RouteSegment> segments = directions.segments();
+      int legs = originalWaypoints.size() - 1;
+
+      double[] legDistances = new double[legs];
+      double[] legDurations = new double[legs];
+      for (int k = 0; k < legs && k < segments.size(); k++) {
+         RouteData.RouteSegment segment = segments.get(k);
+         legDistances[k] = segment.getDistance() != null ? segment.getDistance() : 0.0;
+         legDurations[k] = segment.getDuration() != null ? segment.getDuration() : 0.0;
+      }
 
-         if (properties != null) {
-            // Extract summary
-            JsonNode summary = properties.get("summary");
-            if (summary != null) {
-               if (summary.has("distance")) {
-                  distance = summary.get("distance").asDouble();
+      int[] boundaries = RouteTimeline.boundariesFromWayPoints(directions.wayPoints(), legs, geometry.size());
+      double[] significance = directions.significance();
+      if (toleranceMeters != null && toleranceMeters > 0) {
+         RouteGeometry simplified = geometry.simplify(significance, toleranceMeters);
+         if (simplified != geometry) {
+            // Waypoints are always kept; move each to its index in the simplified geometry
+            double[] keptSignificance = new double[simplified.size()];
+            int kept = 0;
+            int k = 0;
+            for (int i = 0; i < significance.length; i++) {
+               while (boundaries != null && k < boundaries.length && boundaries[k] == i) {
+                  boundaries[k++] = kept;
                }
-               if (summary.has("duration")) {
-                  duration = summary.get("duration").asDouble();
-               }
-            }
-
-            // Extract segments
-            JsonNode segmentsNode = properties.get("segments");
-            if (segmentsNode != null && segmentsNode.isArray()) {
-               for (JsonNode segmentNode : segmentsNode) {
-                  RouteData.RouteSegment segment = new RouteData.RouteSegment();
-                  if (segmentNode.has("distance")) {
-                     segment.setDistance(segmentNode.get("distance").asDouble());
-                  }
-                  if (segmentNode.has("duration")) {
-                     segment.setDuration(segmentNode.get("duration").asDouble());
-                  }
-                  segments.add(segment);
+               if (significance[i] >= toleranceMeters) {
+                  keptSignificance[kept++] = significance[i];
                }
             }
+            significance = keptSignificance;
          }
+         geometry = simplified;
+      }
 
-         // Create waypoint information with arrival times, durations, and timezones
-         List<RouteData.WaypointCoordinates> waypointInfo = new ArrayList<>();
-         if (departureDateTime != null) {
-            // Calculate arrival times with durations and timezone support
-            waypointInfo = calculateArrivalTimesWithDurationAndTimezone(originalWaypoints, segments, departureDateTime,
-                  durations);
-         } else {
-            // No arrival times needed
-            for (RouteRequest.Waypoint wp : originalWaypoints) {
-               List<Double> location = List.of(wp.getLongitude(), wp.getLatitude());
-               RouteData.WaypointCoordinates waypoint = new RouteData.WaypointCoordinates(location, wp.getName());
-               // Add timezone even if no departure time is set
-               String timezone = wp.getTimezoneName();
-               waypoint.setTimezone(timezone);
-               waypointInfo.add(waypoint);
-            }
+      RouteTimeline timeline = null;
+      if (departureDateTime != null) {
+         double[] cumulative = geometry.cumulativeDistances();
+         if (boundaries == null) {
+            boundaries = RouteTimeline.boundariesByDistance(cumulative, legDistances);
+         }
+         long[] stopSeconds = new long[originalWaypoints.size()];
+         for (int i = 0; i < stopSeconds.length; i++) {
+            stopSeconds[i] = getStopMinutes(durations, i) * 60L;
          }
+         timeline = RouteTimeline.compute(cumulative, boundaries, legDurations, departureDateTime.toEpochSecond(),
+               stopSeconds);
+      }
 
-         RouteData routeData = new RouteData();
-         routeData.setGeometry(geometry);
-         routeData.setDistance(distance);
-         routeData.setDuration(duration);
-         routeData.setSegments(segments);
-         routeData.setWaypoints(waypointInfo);
+      // Create waypoint information with arrival times, durations, and timezones
+      List<RouteData.WaypointCoordinates> waypointInfo = new ArrayList<>(originalWaypoints.size());
+      for (int i = 0; i < originalWaypoints.size(); i++) {
+         RouteRequest.Waypoint wp = originalWaypoints.get(i);
+         List<Double> location = List.of(wp.getLongitude(), wp.getLatitude());
+         RouteData.WaypointCoordinates waypoint = new RouteData.WaypointCoordinates(location, wp.getName());
+         // Add timezone even if no departure time is set
+         waypoint.setTimezone(wp.getTimezoneName());
+         if (timeline != null) {
+            ZoneId zone = Utils.zoneId(wp.getTimezoneName());
+            waypoint.setDuration(getStopMinutes(durations, i));
+            waypoint.setArrivalTime(Utils.formatEpochSecond(timeline.arrival(i), zone));
+            waypoint.setDepartureTime(Utils.formatEpochSecond(timeline.departure(i), zone));
+         }
+         waypointInfo.add(waypoint);
+      }
 
-         return routeData;
+      RouteData routeData = new RouteData();
+      routeData.setGeometry(geometry);
+      routeData.setDetailTolerances(detailTolerances);
+      routeData.setDetailLevels(RouteGeometry.detailLevels(significance, detailTolerances));
+      routeData.setDistance(directions.distance());
+      routeData.setDuration(directions.duration());
+      routeData.setSegments(segments);
+      routeData.setWaypoints(waypointInfo);
+      routeData.setTimeline(timeline);
+
+      return routeData;
+   }
 
-      } catch (Exception e) {
-         return createErrorRoute("Failed to parse route response with arrival times: " + e.getMessage());
+   /**
+    * Minutes spent at a waypoint, 0 if not provided
+    */
+   private int getStopMinutes(List<Integer> durations, int index) {
+      if (durations == null || index >= durations.size() || durations.get(index) == null) {
+         return 0;
       }
+      return durations.get(index);
    }
 
-   private List<RouteData.WaypointCoordinates> calculateArrivalTimesWithDurationAndTimezone(
-         List<RouteRequest.Waypoint> originalWaypoints, List<RouteData.RouteSegment> segments, ZonedDateTime departureDateTime,
-         List<Integer> durations) {
-
-      try {
-         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-         String currentTimeStr = departureDateTime.format(formatter);
+   private RouteData createErrorRoute(String errorMessage) {
+      RouteData errorRoute = new RouteData();
+      errorRoute.setGeometry(RouteGeometry.empty());
+      errorRoute.setDistance(0.0);
+      errorRoute.setDuration(0.0);
+      // We could add error information to the model, but for now, the frontend will
+      // handle the error case
+      return errorRoute;
+   }
 
-         List<RouteData.WaypointCoordinates> waypointsWithTimes = new ArrayList<>();
+   /**
+    * Reads the first feature of an ORS directions response in one pass, straight
+    * into the final geometry, segments and way points, without building a JSON tree.
+    * ORS writes properties before geometry, so the last way point gives the exact
+    * vertex count and the coordinate array is allocated once at its final size.
+    */
+   private static final class DirectionsReader {
 
-         for (int i = 0; i < originalWaypoints.size(); i++) {
-            RouteRequest.Waypoint originalWaypoint = originalWaypoints.get(i);
-            String timezone = originalWaypoint.getTimezoneName();
+      private final JsonParser parser;
+      private RouteGeometry geometry = RouteGeometry.empty();
+      private Double distance;
+      private Double duration;
+      private final List<RouteData.RouteSegment> segments = new ArrayList<>();
+      private final List<Integer> wayPoints = new ArrayList<>();
 
-            // Create waypoint coordinates with location and name
-            List<Double> location = List.of(originalWaypoint.getLongitude(), originalWaypoint.getLatitude());
-            RouteData.WaypointCoordinates waypoint = new RouteData.WaypointCoordinates(location,
-                  originalWaypoint.getName());
-            waypoint.setTimezone(timezone);
+      DirectionsReader(JsonParser parser) {
+         this.parser = parser;
+      }
 
-            // Set duration for this waypoint (default to 0 if not provided)
-            Integer waypointDuration = 0;
-            if (durations != null && i < durations.size()) {
-               waypointDuration = durations.get(i) != null ? durations.get(i) : 0;
+      /**
+       * @return The directions, or null if the response has no route
+       */
+      Directions read() throws IOException {
+         if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+         }
+         boolean found = false;
+         while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("features".equals(field) && token == JsonToken.START_ARRAY && !found) {
+               // Only the first feature is used; the rest are skipped unparsed
+               while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                  if (token == JsonToken.START_OBJECT && !found) {
+                     readFeature();
+                     found = true;
+                  } else {
+                     parser.skipChildren();
+                  }
+               }
+            } else {
+               parser.skipChildren();
             }
-            waypoint.setDuration(waypointDuration);
+         }
+         if (!found) {
+            return null;
+         }
+         return new Directions(geometry, distance, duration,
+               Collections.unmodifiableList(segments), Collections.unmodifiableList(wayPoints), null);
+      }
 
-            if (i == 0) {
-               // First waypoint gets the departure time
-               waypoint.setArrivalTime(currentTimeStr);
+      private void readFeature() throws IOException {
+         while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("properties".equals(field) && token == JsonToken.START_OBJECT) {
+               readProperties();
+            } else if ("geometry".equals(field) && token == JsonToken.START_OBJECT) {
+               readGeometry();
             } else {
-               // Convert previous waypoint's departure time to current waypoint's timezone
-               RouteRequest.Waypoint previousWaypoint = originalWaypoints.get(i - 1);
-               String previousTimezone = previousWaypoint.getTimezoneName();
+               parser.skipChildren();
+            }
+         }
+      }
 
-               String arrivalTimeInCurrentTimezone = Utils.convertDateTime(currentTimeStr, previousTimezone, timezone);
-               waypoint.setArrivalTime(arrivalTimeInCurrentTimezone);
-               currentTimeStr = arrivalTimeInCurrentTimezone;
+      private void readGeometry() throws IOException {
+         while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("coordinates".equals(field) && token == JsonToken.START_ARRAY) {
+               int expectedSize = wayPoints.isEmpty() ? 1024 : wayPoints.get(wayPoints.size() - 1) + 1;
+               geometry = RouteGeometry.read(parser, expectedSize);
+            } else {
+               parser.skipChildren();
             }
+         }
+      }
 
-            // Calculate departure time (arrival time + duration)
-            String departureTime = addMinutesToDateTime(currentTimeStr, timezone, waypointDuration);
-            waypoint.setDepartureTime(departureTime);
-
-            // Update current time for next segment (convert to next waypoint's timezone
-            // when we get there)
-            if (i < originalWaypoints.size() - 1) {
-               // Add travel time for next segment
-               if (i < segments.size()) {
-                  RouteData.RouteSegment segment = segments.get(i);
-                  if (segment.getDuration() != null) {
-                     // Add travel time (duration is in seconds)
-                     currentTimeStr = addMinutesToDateTime(departureTime, timezone,
-                           (int) (segment.getDuration().longValue() / 60));
+      private void readProperties() throws IOException {
+         while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("summary".equals(field) && token == JsonToken.START_OBJECT) {
+               RouteData.RouteSegment summary = readSegment();
+               distance = summary.getDistance();
+               duration = summary.getDuration();
+            } else if ("segments".equals(field) && token == JsonToken.START_ARRAY) {
+               while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                  if (token == JsonToken.START_OBJECT) {
+                     segments.add(readSegment());
+                  } else {
+                     parser.skipChildren();
+                  }
+               }
+            } else if ("way_points".equals(field) && token == JsonToken.START_ARRAY) {
+               while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                  if (token.isNumeric()) {
+                     wayPoints.add(parser.getIntValue());
+                  } else {
+                     parser.skipChildren();
                   }
                }
+            } else {
+               parser.skipChildren();
             }
+         }
+      }
 
-            waypointsWithTimes.add(waypoint);
+      /**
+       * Read the distance and duration of a segment or summary, skipping its steps
+       */
+      private RouteData.RouteSegment readSegment() throws IOException {
+         RouteData.RouteSegment segment = new RouteData.RouteSegment();
+         while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("distance".equals(field) && token.isNumeric()) {
+               segment.setDistance(parser.getDoubleValue());
+            } else if ("duration".equals(field) && token.isNumeric()) {
+               segment.setDuration(parser.getDoubleValue());
+            } else {
+               parser.skipChildren();
+            }
          }
+         return segment;
+      }
+   }
 
-         return waypointsWithTimes;
+   /**
+    * Parsed ORS directions, independent of departure time and stop durations.
+    * wayPoints holds the geometry index of each waypoint. significance holds the
+    * Douglas-Peucker significance of each vertex once the route is complete, and is
+    * null for single legs.
+    */
+   private record Directions(RouteGeometry geometry, Double distance, Double duration,
+         List<RouteData.RouteSegment> segments, List<Integer> wayPoints, double[] significance) {
 
-      } catch (Exception e) {
-         // If there's an error parsing the departure time, return waypoints without arrival times
-         System.err.println("Error calculating arrival times with durations and timezones: " + e.getMessage());
-         // Return basic waypoints without arrival times
-         List<RouteData.WaypointCoordinates> fallbackWaypoints = new ArrayList<>();
-         for (RouteRequest.Waypoint wp : originalWaypoints) {
-            List<Double> location = List.of(wp.getLongitude(), wp.getLatitude());
-            RouteData.WaypointCoordinates waypoint = new RouteData.WaypointCoordinates(location, wp.getName());
-            String timezone = wp.getTimezoneName();
-            waypoint.setTimezone(timezone);
-            fallbackWaypoints.add(waypoint);
-         }
-         return fallbackWaypoints;
+      Directions withSignificance(double[] significance) {
+         return new Directions(geometry, distance, duration, segments, wayPoints, significance);
       }
    }
 
-   private RouteData createErrorRoute(String errorMessage) {
-      RouteData errorRoute = new RouteData();
-      errorRoute.setGeometry(new ArrayList<>());
-      errorRoute.setDistance(0.0);
-      errorRoute.setDuration(0.0);
-      // We could add error information to the model, but for now, the frontend will
-      // handle the error case
-      return errorRoute;
+   /**
+    * A point on the road network, as returned by the snap endpoint
+    */
+   private record SnappedPoint(double longitude, double latitude, String name) {
+   }
+
+   /**
+    * Response of the ORS line elevation endpoint with format_out=polyline:
+    * the input coordinates with elevation added, in the same order
+    */
+   @JsonIgnoreProperties(ignoreUnknown = true)
+   private record ElevationLine(RouteGeometry geometry) {
    }
 
    /**
@@ -0,0 +1,215 @@
+package com.pjr22.tripweather.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pjr22.tripweather.Utils;
+import com.pjr22.tripweather.model.RouteData;
+import com.pjr22.tripweather.model.RouteGeometry;
+import com.pjr22.tripweather.model.RouteTimeline;
+import com.pjr22.tripweather.model.RouteWeatherSample;
+import com.pjr22.tripweather.model.WeatherData;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds a weather timeline for the whole route, not just the user's waypoints, by
+ * sampling points along the route geometry and forecasting each at the time the
+ * route reaches it.
+ */
+@Service
+@Slf4j
+public class RouteWeatherService {
+
+    private final WeatherService weatherService;
+    private final double defaultIntervalKm;
+    private final int maxSamples;
+
+    public RouteWeatherService(
+            WeatherService weatherService,
+            @Value("${weather.timeline.default-interval-km:25}") double defaultIntervalKm,
+            @Value("${weather.timeline.max-samples:400}") int maxSamples) {
+        this.weatherService = weatherService;
+        this.defaultIntervalKm = defaultIntervalKm;
+        this.maxSamples = Math.max(2, maxSamples);
+    }
+
+    /**
+     * Sample the route every intervalKm of distance, or every intervalMinutes of driving
+     * time if that is set, and forecast each sample at its estimated arrival time.
+     *
+     * @param route Route as returned by RouteService.calculateRoute
+     * @param intervalKm Distance between samples, or null for the default
+     * @param intervalMinutes Driving time between samples, or null to sample by distance
+     * @return Samples in route order, which is also time order
+     */
+    public List<RouteWeatherSample> getWeatherTimeline(RouteData route, Double intervalKm, Integer intervalMinutes) {
+        RouteSamples samples = sampleRoute(route, intervalKm, intervalMinutes);
+        List<WeatherData> weather = weatherService.getWeatherForecastsAt(samples.latitudes(), samples.longitudes(),
+                samples.times());
+
+        List<RouteWeatherSample> timeline = new ArrayList<>(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            timeline.add(new RouteWeatherSample(samples.latitudes()[i], samples.longitudes()[i],
+                    samples.distances()[i], Instant.ofEpochSecond(samples.times()[i]).toString(), weather.get(i)));
+        }
+
+        log.info("Built weather timeline with {} samples over {} route points", samples.size(),
+                route.getGeometry().size());
+        return timeline;
+    }
+
+    /**
+     * Sample the route every intervalKm of distance, or every intervalMinutes of driving
+     * time if that is set, with the time the route reaches each sample. Sampling and ETA
+     * interpolation are a single pass over the geometry.
+     *
+     * @param route Route as returned by RouteService.calculateRoute
+     * @param intervalKm Distance between samples, or null for the default
+     * @param intervalMinutes Driving time between samples, or null to sample by distance
+     */
+    public RouteSamples sampleRoute(RouteData route, Double intervalKm, Integer intervalMinutes) {
+        RouteGeometry geometry = route.getGeometry();
+        if (geometry == null || geometry.size() < 2) {
+            throw new IllegalArgumentException("Route geometry must have at least 2 points");
+        }
+
+        int n = geometry.size();
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            longitudes[i] = geometry.longitude(i);
+            latitudes[i] = geometry.latitude(i);
+        }
+        double[] cumulative = geometry.cumulativeDistances();
+
+        RouteTimeline routeTimeline = route.getTimeline();
+        if (routeTimeline == null || routeTimeline.vertexCount() != n) {
+            routeTimeline = buildTimeline(route, cumulative);
+        }
+        long[] vertexTimes = routeTimeline.vertexTimes();
+
+        // Sample along either the distance or the time axis; both increase along the route
+        double[] axis;
+        double step;
+        if (intervalMinutes != null && intervalMinutes > 0) {
+            axis = new double[n];
+            for (int i = 0; i < n; i++) {
+                axis[i] = vertexTimes[i] - vertexTimes[0];
+            }
+            step = intervalMinutes * 60.0;
+        } else {
+            axis = cumulative;
+            step = (intervalKm != null && intervalKm > 0 ? intervalKm : defaultIntervalKm) * 1000.0;
+        }
+
+        double span = axis[n - 1] - axis[0];
+        if (span <= 0) {
+            step = Double.POSITIVE_INFINITY;
+        } else if (span / step > maxSamples - 1) {
+            step = span / (maxSamples - 1);
+        }
+
+        double[] sampleLatitudes = new double[maxSamples + 1];
+        double[] sampleLongitudes = new double[maxSamples + 1];
+        double[] sampleDistances = new double[maxSamples + 1];
+        long[] sampleTimes = new long[maxSamples + 1];
+        int count = 0;
+
+        double next = axis[0];
+        for (int v = 0; v < n - 1 && count < maxSamples; v++) {
+            double width = axis[v + 1] - axis[v];
+            while (next <= axis[v + 1] && count < maxSamples) {
+                double f = width > 0 ? (next - axis[v]) / width : 0.0;
+                sampleLatitudes[count] = latitudes[v] + f * (latitudes[v + 1] - latitudes[v]);
+                sampleLongitudes[count] = longitudes[v] + f * (longitudes[v + 1] - longitudes[v]);
+                sampleDistances[count] = cumulative[v] + f * (cumulative[v + 1] - cumulative[v]);
+                sampleTimes[count] = vertexTimes[v] + Math.round(f * (vertexTimes[v + 1] - vertexTimes[v]));
+                count++;
+                next += step;
+            }
+        }
+
+        // Always include the destination
+        if (count == 0 || sampleDistances[count - 1] < cumulative[n - 1]) {
+            sampleLatitudes[count] = latitudes[n - 1];
+            sampleLongitudes[count] = longitudes[n - 1];
+            sampleDistances[count] = cumulative[n - 1];
+            sampleTimes[count] = vertexTimes[n - 1];
+            count++;
+        }
+
+        return new RouteSamples(Arrays.copyOf(sampleLatitudes, count), Arrays.copyOf(sampleLongitudes, count),
+                Arrays.copyOf(sampleDistances, count), Arrays.copyOf(sampleTimes, count));
+    }
+
+    /**
+     * Rebuild the timeline of a route posted back by the client, which carries only
+     * formatted waypoint times. Leg boundaries are placed by scaling each segment's
+     * distance to the polyline length, and the trip starts at the first waypoint's time.
+     */
+    private RouteTimeline buildTimeline(RouteData route, double[] cumulative) {
+        List<RouteData.RouteSegment> segments = route.getSegments();
+        List<RouteData.WaypointCoordinates> waypoints = route.getWaypoints();
+
+        int legs = segments != null && !segments.isEmpty() ? segments.size() : 1;
+        double[] legDurations = new double[legs];
+        double[] legDistances = new double[legs];
+        if (segments == null || segments.isEmpty()) {
+            legDurations[0] = route.getDuration() != null ? route.getDuration() : 0.0;
+        } else {
+            for (int k = 0; k < legs; k++) {
+                RouteData.RouteSegment segment = segments.get(k);
+                legDurations[k] = segment.getDuration() != null ? segment.getDuration() : 0.0;
+                legDistances[k] = segment.getDistance() != null ? segment.getDistance() : 0.0;
+            }
+        }
+
+        long[] stopSeconds = new long[legs + 1];
+        for (int k = 0; k <= legs && waypoints != null && k < waypoints.size(); k++) {
+            Integer duration = waypoints.get(k).getDuration();
+            stopSeconds[k] = duration != null ? duration * 60L : 0;
+        }
+
+        Long start = getWaypointArrivalTime(waypoints, 0);
+        return RouteTimeline.compute(cumulative, RouteTimeline.boundariesByDistance(cumulative, legDistances),
+                legDurations, start != null ? start : Instant.now().getEpochSecond(), stopSeconds);
+    }
+
+    private Long getWaypointArrivalTime(List<RouteData.WaypointCoordinates> waypoints, int index) {
+        if (waypoints == null || index >= waypoints.size()) {
+            return null;
+        }
+
+        RouteData.WaypointCoordinates waypoint = waypoints.get(index);
+        String dateTime = waypoint.getArrivalTime();
+        if (dateTime == null || dateTime.isBlank()) {
+            return null;
+        }
+
+        try {
+            return LocalDateTime.parse(dateTime, Utils.date_time_formatter)
+                    .atZone(Utils.zoneId(waypoint.getTimezone())).toEpochSecond();
+        } catch (Exception e) {
+            log.warn("Could not parse waypoint time '{}': {}", dateTime, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Points sampled along a route, in route order. Distances are meters from the start
+     * of the route and times are the epoch seconds the route reaches each point.
+     */
+    public record RouteSamples(double[] latitudes, double[] longitudes, double[] distances, long[] times) {
+
+        public int size() {
+            return latitudes.length;
+        }
+    }
+}
@@ -1,68 +1,445 @@
 package com.pjr22.tripweather.service;
 
+import com.pjr22.tripweather.cache.CircuitBreaker;
+import com.pjr22.tripweather.cache.ExpiringCache;
+import com.pjr22.tripweather.cache.ForecastStore;
+import com.pjr22.tripweather.cache.PersistentWeatherCache;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.pjr22.tripweather.dto.WeatherForecastRequest;
+import com.pjr22.tripweather.model.ForecastIndex;
 import com.pjr22.tripweather.model.WeatherData;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class WeatherService {
 
     private final RestClient restClient;
-    private static final String BASE_URL = "https://api.weather.gov";
+    private final ExpiringCache<String, String> pointsCache;
+    private final Duration pointsTtl;
+    private final PersistentWeatherCache persistentCache;
+    private final ForecastStore forecastStore;
+    private final ExecutorService fetchExecutor;
+    private final InFlightRequestRegistry inFlightRequests;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration negativeTtl;
+    // Updated and drained with atomic map operations, so no lookup is lost between drains
+    private final ConcurrentHashMap<String, Long> forecastAccessCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger interactiveFetchesInFlight = new AtomicInteger();
+    private static final String UPSTREAM_NAME = "weather.gov";
     private static final String USER_AGENT = "TripWeather/1.0 (tripweather.app)";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // Cached in place of a forecast URL for points NWS has no forecast for
+    private static final String NO_FORECAST = "";
 
-    public WeatherService() {
+    public WeatherService(
+            @Value("${weather.base.url:https://api.weather.gov}") String baseUrl,
+            @Value("${weather.points.cache.ttl-minutes:1440}") long pointsCacheTtlMinutes,
+            @Value("${weather.points.cache.max-size:10000}") int pointsCacheMaxSize,
+            @Value("${weather.points.negative-ttl-minutes:10}") long negativeTtlMinutes,
+            @Value("${weather.batch.parallelism:8}") int batchParallelism,
+            @Value("${weather.http.connect-timeout-ms:3000}") long connectTimeoutMs,
+            @Value("${weather.http.read-timeout-ms:10000}") long readTimeoutMs,
+            @Value("${weather.circuit.failure-threshold:5}") int circuitFailureThreshold,
+            @Value("${weather.circuit.open-seconds:30}") long circuitOpenSeconds,
+            ForecastStore forecastStore,
+            PersistentWeatherCache persistentCache,
+            InFlightRequestRegistry inFlightRequests) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
         this.restClient = RestClient.builder()
-                .baseUrl(BASE_URL)
+                .baseUrl(baseUrl)
                 .defaultHeader("User-Agent", USER_AGENT)
+                .requestFactory(requestFactory)
                 .build();
+        // 4xx responses are about the request, not the health of weather.gov, apart from
+        // 408 and 429
+        this.circuitBreaker = new CircuitBreaker(UPSTREAM_NAME, circuitFailureThreshold,
+                Duration.ofSeconds(circuitOpenSeconds),
+                e -> !(e instanceof RestClientResponseException response)
+                        || response.getStatusCode().is5xxServerError()
+                        || response.getStatusCode().value() == 408
+                        || response.getStatusCode().value() == 429);
+        this.negativeTtl = Duration.ofMinutes(negativeTtlMinutes);
+        this.pointsTtl = Duration.ofMinutes(pointsCacheTtlMinutes);
+        this.pointsCache = new ExpiringCache<>("weather-points", pointsCacheMaxSize, pointsTtl);
+        this.persistentCache = persistentCache;
+        this.forecastStore = forecastStore;
+        this.inFlightRequests = inFlightRequests;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.fetchExecutor = Executors.newFixedThreadPool(batchParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "weather-fetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Hit/miss counters for the weather caches
+     */
+    public List<ExpiringCache.CacheStats> getCacheStats() {
+        return List.of(pointsCache.stats(), forecastStore.cacheStats(), persistentCache.stats());
+    }
+
+    /**
+     * Size and estimated heap usage of the stored gridpoint forecasts
+     */
+    public ForecastStore.StoreStats getForecastStoreStats() {
+        return forecastStore.stats();
+    }
+
+    /**
+     * State of the circuit breaker guarding api.weather.gov
+     */
+    public CircuitBreaker.CircuitStats getCircuitStats() {
+        return circuitBreaker.stats();
+    }
+
+    /**
+     * Whether calls to api.weather.gov are currently being let through
+     */
+    public boolean isUpstreamAvailable() {
+        return circuitBreaker.getState() != CircuitBreaker.State.OPEN;
     }
 
     public WeatherData getWeatherForecast(double latitude, double longitude, String date, String time) {
         try {
-            String forecastUrl = getForecastUrl(latitude, longitude);
+            String forecastUrl = getForecastUrl(getPointsKey(latitude, longitude));
             if (forecastUrl == null) {
                 return WeatherData.createError("Unable to get forecast URL for location");
             }
 
-            JsonNode forecastData = restClient.get()
-                    .uri(forecastUrl)
-                    .retrieve()
-                    .body(JsonNode.class);
+            return getWeatherFromDocument(getForecastDocument(forecastUrl), date, time);
 
-            if (forecastData == null || !forecastData.has("properties")) {
+        } catch (Exception e) {
+            return WeatherData.createError("Error fetching weather: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get forecasts for many locations at once. Each distinct location is resolved to
+     * its gridpoint once, each distinct gridpoint forecast is fetched once, and those
+     * upstream calls run concurrently on the bounded fetch pool.
+     *
+     * @param requests Locations and target date/times
+     * @return Weather data in the same order as the requests
+     */
+    public List<WeatherData> getWeatherForecasts(List<WeatherForecastRequest> requests) {
+        return startWeatherForecasts(requests).stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Start forecasts for many locations without waiting for them, so callers can use
+     * each result as soon as it is ready. Upstream calls are de-duplicated as for
+     * {@link #getWeatherForecasts(List)}.
+     *
+     * @param requests Locations and target date/times
+     * @return One future per request, in request order; futures never complete exceptionally
+     */
+    public List<CompletableFuture<WeatherData>> startWeatherForecasts(List<WeatherForecastRequest> requests) {
+        ForecastBatch batch = new ForecastBatch();
+        List<CompletableFuture<WeatherData>> results = new ArrayList<>();
+
+        for (WeatherForecastRequest request : requests) {
+            if (request == null || request.getLatitude() == null || request.getLongitude() == null) {
+                results.add(CompletableFuture.completedFuture(WeatherData.createError("Invalid coordinates")));
+                continue;
+            }
+
+            results.add(batch.lookup(request.getLatitude(), request.getLongitude(),
+                    forecast -> getWeatherFromDocument(forecast, request.getDate(), request.getTime())));
+        }
+
+        return results;
+    }
+
+    /**
+     * Get forecasts for many locations, each at an absolute time. Locations sharing a
+     * gridpoint are answered from a single fetch of that gridpoint's forecast.
+     *
+     * @param latitudes Latitude of each location
+     * @param longitudes Longitude of each location
+     * @param epochSeconds Target time of each location
+     * @return Weather data in the same order as the locations
+     */
+    public List<WeatherData> getWeatherForecastsAt(double[] latitudes, double[] longitudes, long[] epochSeconds) {
+        ForecastBatch batch = new ForecastBatch();
+        List<CompletableFuture<WeatherData>> results = new ArrayList<>(latitudes.length);
+
+        for (int i = 0; i < latitudes.length; i++) {
+            long epochSecond = epochSeconds[i];
+            results.add(batch.lookup(latitudes[i], longitudes[i], forecast -> {
+                int period = forecast.findPeriod(epochSecond);
+                return period < 0
+                        ? WeatherData.createError("No forecast available for selected date/time")
+                        : forecast.toWeatherData(period);
+            }));
+        }
+
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Forecasts for many points, each distinct gridpoint fetched once, for callers that
+     * evaluate many target times against the same forecasts
+     * @return The forecast for each point, null where none is available
+     */
+    public ForecastIndex[] getForecasts(double[] latitudes, double[] longitudes) {
+        ForecastBatch batch = new ForecastBatch();
+        List<CompletableFuture<ForecastIndex>> results = new ArrayList<>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++) {
+            results.add(batch.forecast(latitudes[i], longitudes[i]));
+        }
+
+        ForecastIndex[] forecasts = new ForecastIndex[latitudes.length];
+        for (int i = 0; i < forecasts.length; i++) {
+            forecasts[i] = results.get(i).join();
+        }
+        return forecasts;
+    }
+
+    private WeatherData getWeatherFromDocument(ForecastIndex forecast, String date, String time) {
+        try {
+            if (forecast == null) {
                 return WeatherData.createError("Invalid forecast data");
             }
 
             LocalDateTime targetDateTime = parseDateTime(date, time);
-            JsonNode periods = forecastData.get("properties").get("periods");
-            
-            JsonNode matchingPeriod = findMatchingPeriod(periods, targetDateTime);
+            int matchingPeriod = findMatchingPeriod(forecast, targetDateTime);
 
-            if (matchingPeriod == null) {
+            if (matchingPeriod < 0) {
                 return WeatherData.createError("No forecast available for selected date/time");
             }
 
-            return extractWeatherData(matchingPeriod);
+            return forecast.toWeatherData(matchingPeriod);
 
         } catch (Exception e) {
             return WeatherData.createError("Error fetching weather: " + e.getMessage());
         }
     }
 
-    private String getForecastUrl(double latitude, double longitude) {
+    /**
+     * Get the forecast document for a gridpoint forecast URL. Waypoints in the same
+     * grid cell share the URL, so the document is indexed once, cached for as long as
+     * NWS says it is fresh, and every target time for that gridpoint is answered from it.
+     *
+     * @return Indexed forecast, or null if the response had no forecast properties
+     */
+    private ForecastIndex getForecastDocument(String forecastUrl) {
+        forecastAccessCounts.merge(forecastUrl, 1L, Long::sum);
+        ForecastIndex cached = forecastStore.get(forecastUrl);
+        if (cached != null) {
+            return cached;
+        }
+
+        return interactiveFetch(forecastUrl, () -> fetchForecast(forecastUrl));
+    }
+
+    /**
+     * Run an upstream call on behalf of a user request, counting it as in flight so
+     * background refreshes can stay out of its way
+     */
+    private <T> T interactiveFetch(String key, Supplier<T> call) {
+        interactiveFetchesInFlight.incrementAndGet();
+        try {
+            return inFlightRequests.execute(UPSTREAM_NAME, key, call);
+        } finally {
+            interactiveFetchesInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Number of upstream calls currently being made for user requests
+     */
+    public int getInteractiveFetchesInFlight() {
+        return interactiveFetchesInFlight.get();
+    }
+
+    /**
+     * Get and reset the number of lookups of each forecast URL since the last call
+     */
+    public Map<String, Long> drainForecastAccessCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (String url : forecastAccessCounts.keySet()) {
+            // A lookup after the removal starts a new count for the next drain
+            Long accesses = forecastAccessCounts.remove(url);
+            if (accesses != null) {
+                counts.put(url, accesses);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Forecast URLs whose cached forecast will expire within the given window
+     */
+    public List<String> getForecastsExpiringWithin(Duration window) {
+        return forecastStore.keysExpiringWithin(window);
+    }
+
+    /**
+     * Re-fetch a forecast ahead of its expiry and replace the cached copy. A user
+     * request already fetching the same forecast is joined rather than repeated.
+     * Refreshes stay out of the circuit breaker: they are skipped unless it is closed,
+     * and their failures are not counted, so background work never turns users away.
+     */
+    public void refreshForecast(String forecastUrl) {
+        if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            return;
+        }
+        inFlightRequests.execute(UPSTREAM_NAME, forecastUrl, () -> downloadForecast(forecastUrl));
+    }
+
+    private ForecastIndex fetchForecast(String forecastUrl) {
+        return circuitBreaker.execute(() -> downloadForecast(forecastUrl));
+    }
+
+    /**
+     * Fetch a gridpoint forecast and decode it straight from the response stream.
+     * Forecast documents are large and only a few fields of each period are used,
+     * so no JSON tree is built for them.
+     */
+    private ForecastIndex downloadForecast(String forecastUrl) {
+        return restClient.get()
+                .uri(forecastUrl)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        throw new RestClientResponseException("Forecast request failed",
+                                response.getStatusCode(), response.getStatusText(), response.getHeaders(), null, null);
+                    }
+
+                    ForecastIndex forecast;
+                    try (JsonParser parser = JSON_FACTORY.createParser(response.getBody())) {
+                        forecast = forecastStore.read(parser);
+                    }
+                    if (forecast != null) {
+                        forecastStore.put(forecastUrl, forecast, getCacheLifetime(response.getHeaders()));
+                    }
+                    return forecast;
+                });
+    }
+
+    /**
+     * Work out how long a response may be reused from its Cache-Control or Expires
+     * headers, falling back to the configured default when neither is present.
+     */
+    private Duration getCacheLifetime(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null) {
+            Long maxAge = null;
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store") || directive.equals("no-cache")) {
+                    return Duration.ZERO;
+                }
+                // We serve many users from one copy, so the shared-cache lifetime wins
+                if (directive.startsWith("s-maxage=")) {
+                    maxAge = parseSeconds(directive.substring("s-maxage=".length()));
+                } else if (directive.startsWith("max-age=") && maxAge == null) {
+                    maxAge = parseSeconds(directive.substring("max-age=".length()));
+                }
+            }
+            if (maxAge != null) {
+                return Duration.ofSeconds(Math.max(0, maxAge));
+            }
+        }
+
+        long expires = headers.getExpires();
+        if (expires >= 0) {
+            long date = headers.getDate();
+            long now = date >= 0 ? date : System.currentTimeMillis();
+            return Duration.ofMillis(Math.max(0, expires - now));
+        }
+
+        return forecastStore.getDefaultTtl();
+    }
+
+    private Long parseSeconds(String value) {
         try {
-            String pointsUrl = String.format("/points/%.4f,%.4f", latitude, longitude);
-            
-            JsonNode pointsData = restClient.get()
-                    .uri(pointsUrl)
-                    .retrieve()
-                    .body(JsonNode.class);
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String getPointsKey(double latitude, double longitude) {
+        // NWS only accepts 4 decimal places, so that is also the cache key
+        return String.format(Locale.ROOT, "%.4f,%.4f", latitude, longitude);
+    }
+
+    private String getForecastUrl(String pointsKey) {
+        String cachedUrl = pointsCache.get(pointsKey);
+        if (cachedUrl != null) {
+            return NO_FORECAST.equals(cachedUrl) ? null : cachedUrl;
+        }
+
+        PersistentWeatherCache.StoredValue stored = persistentCache.getPoints(pointsKey);
+        if (stored != null) {
+            String storedUrl = stored.asString();
+            pointsCache.put(pointsKey, storedUrl, stored.remainingTtl());
+            return NO_FORECAST.equals(storedUrl) ? null : storedUrl;
+        }
+
+        String forecastUrl = interactiveFetch("/points/" + pointsKey, () -> fetchForecastUrl(pointsKey));
+        // Points outside NWS coverage are remembered briefly so they are not retried on every request
+        Duration ttl = NO_FORECAST.equals(forecastUrl) ? negativeTtl : pointsTtl;
+        pointsCache.put(pointsKey, forecastUrl, ttl);
+        persistentCache.putPoints(pointsKey, forecastUrl, ttl);
+        return NO_FORECAST.equals(forecastUrl) ? null : forecastUrl;
+    }
+
+    /**
+     * Look up the forecast URL for a point
+     * @return The URL, or NO_FORECAST if NWS has no forecast for the point
+     * @throws RuntimeException If weather.gov failed or rejected the request, or the circuit is open
+     */
+    private String fetchForecastUrl(String pointsKey) {
+        return circuitBreaker.execute(() -> {
+            JsonNode pointsData;
+            try {
+                pointsData = restClient.get()
+                        .uri("/points/" + pointsKey)
+                        .retrieve()
+                        .body(JsonNode.class);
+            } catch (HttpClientErrorException.NotFound e) {
+                // Outside NWS coverage (offshore, Canada, Mexico) comes back as a 404. Other
+                // 4xx responses say nothing about the point, so they are not cached as NO_FORECAST.
+                return NO_FORECAST;
+            }
 
             if (pointsData != null && pointsData.has("properties")) {
                 JsonNode properties = pointsData.get("properties");
@@ -72,10 +449,8 @@ public class WeatherService {
                     return properties.get("forecast").asText();
                 }
             }
-            return null;
-        } catch (Exception e) {
-            return null;
-        }
+            return NO_FORECAST;
+        });
     }
 
     private LocalDateTime parseDateTime(String date, String time) {
@@ -83,59 +458,60 @@ public class WeatherService {
         return LocalDateTime.parse(dateTimeStr);
     }
 
-    private JsonNode findMatchingPeriod(JsonNode periods, LocalDateTime targetDateTime) {
-        if (periods == null || !periods.isArray()) {
-            return null;
+    private int findMatchingPeriod(ForecastIndex forecast, LocalDateTime targetDateTime) {
+        int period = forecast.findPeriod(targetDateTime);
+        if (period < 0 && forecast.size() > 0) {
+            return 0;
         }
+        return period;
+    }
 
-        for (JsonNode period : periods) {
-            if (period.has("startTime") && period.has("endTime")) {
-                ZonedDateTime startTime = ZonedDateTime.parse(period.get("startTime").asText());
-                ZonedDateTime endTime = ZonedDateTime.parse(period.get("endTime").asText());
-                
-                ZonedDateTime targetZoned = targetDateTime.atZone(startTime.getZone());
-                
-                if (!targetZoned.isBefore(startTime) && targetZoned.isBefore(endTime)) {
-                    return period;
-                }
-            }
+    /**
+     * De-duplicates the upstream calls made for one batch of lookups: every distinct
+     * point is resolved once and every distinct gridpoint forecast is fetched once.
+     */
+    private class ForecastBatch {
+
+        private final Map<String, CompletableFuture<String>> urlsByPoint = new HashMap<>();
+        private final Map<String, CompletableFuture<ForecastIndex>> forecastsByUrl = new ConcurrentHashMap<>();
+
+        CompletableFuture<WeatherData> lookup(double latitude, double longitude,
+                Function<ForecastIndex, WeatherData> reader) {
+            return forecastUrl(latitude, longitude)
+                    .thenCompose(url -> {
+                        if (url == null) {
+                            return CompletableFuture.completedFuture(
+                                    WeatherData.createError("Unable to get forecast URL for location"));
+                        }
+                        return forecastDocument(url)
+                                .thenApply(forecast -> forecast == null
+                                        ? WeatherData.createError("Invalid forecast data")
+                                        : reader.apply(forecast));
+                    })
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        return WeatherData.createError("Error fetching weather: " + cause.getMessage());
+                    });
         }
 
-        if (periods.size() > 0) {
-            return periods.get(0);
-        }
-
-        return null;
-    }
-
-    private WeatherData extractWeatherData(JsonNode period) {
-        String condition = period.has("shortForecast") ? 
-                period.get("shortForecast").asText() : "Unknown";
-        
-        Integer temperature = period.has("temperature") ? 
-                period.get("temperature").asInt() : null;
-        
-        String temperatureUnit = period.has("temperatureUnit") ? 
-                period.get("temperatureUnit").asText() : "F";
-        
-        String windSpeed = period.has("windSpeed") ? 
-                period.get("windSpeed").asText() : "Unknown";
-        
-        String windDirection = period.has("windDirection") ? 
-                period.get("windDirection").asText() : "Unknown";
-        
-        String iconUrl = period.has("icon") ? 
-                period.get("icon").asText() : null;
-        
-        Integer precipitationProbability = null;
-        if (period.has("probabilityOfPrecipitation")) {
-            JsonNode precipNode = period.get("probabilityOfPrecipitation");
-            if (precipNode.has("value") && !precipNode.get("value").isNull()) {
-                precipitationProbability = precipNode.get("value").asInt();
-            }
+        /**
+         * @return The point's forecast, or null if it has none or it could not be fetched
+         */
+        CompletableFuture<ForecastIndex> forecast(double latitude, double longitude) {
+            return forecastUrl(latitude, longitude)
+                    .thenCompose(url -> url == null ? CompletableFuture.<ForecastIndex>completedFuture(null)
+                            : forecastDocument(url))
+                    .exceptionally(e -> null);
         }
 
-        return new WeatherData(condition, temperature, temperatureUnit, windSpeed, 
-                windDirection, iconUrl, precipitationProbability);
+        private CompletableFuture<String> forecastUrl(double latitude, double longitude) {
+            return urlsByPoint.computeIfAbsent(getPointsKey(latitude, longitude),
+                    key -> CompletableFuture.supplyAsync(() -> getForecastUrl(key), fetchExecutor));
+        }
+
+        private CompletableFuture<ForecastIndex> forecastDocument(String url) {
+            return forecastsByUrl.computeIfAbsent(url,
+                    key -> CompletableFuture.supplyAsync(() -> getForecastDocument(key), fetchExecutor));
+        }
     }
 }
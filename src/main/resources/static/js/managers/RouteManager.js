@@ -12,6 +12,13 @@ window.TripWeather.Managers.Route = {
     routePolylines: [],
     routeLabels: [],
     currentRoute: null,
+    // Full route in Leaflet [lat, lng] order and its per-vertex levels of detail
+    routeCoordinates: null,
+    routeDetail: null,
+    zoomHandler: null,
+
+    // Encoded elevation standing for "unknown", see RouteGeometry.MISSING_ELEVATION
+    MISSING_ELEVATION: -32768,
     
     /**
      * Initialize route manager
@@ -73,8 +80,11 @@ window.TripWeather.Managers.Route = {
             };
         });
 
-        window.TripWeather.Utils.Helpers.httpPost('/api/route/calculate', waypointData)
+        window.TripWeather.Utils.Helpers.httpPost('/api/route/calculate?format=polyline', waypointData)
             .then(function(routeData) {
+                if (routeData && routeData.encodedGeometry) {
+                    routeData.geometry = window.TripWeather.Managers.Route.decodeGeometry(routeData);
+                }
                 if (routeData && routeData.geometry && routeData.geometry.length > 0) {
                     window.TripWeather.Managers.Route.displayRoute(routeData);
                     window.TripWeather.Managers.Route.currentRoute = routeData;
@@ -92,6 +102,63 @@ window.TripWeather.Managers.Route = {
             });
     },
 
+    /**
+     * Decode an encoded polyline route into [lon, lat, ele] coordinates. Vertices with
+     * an unknown elevation become [lon, lat], as in the uncompressed geometry.
+     * @param {object} routeData - Route data with encodedGeometry and optional encodedElevation
+     * @returns {Array} Coordinates in the same shape as the uncompressed geometry
+     */
+    decodeGeometry: function(routeData) {
+        const values = this.decodePolylineValues(routeData.encodedGeometry);
+        const factor = Math.pow(10, routeData.polylinePrecision || 5);
+        const elevations = routeData.encodedElevation
+            ? this.decodePolylineValues(routeData.encodedElevation)
+            : null;
+        const elevationFactor = Math.pow(10, routeData.elevationPrecision || 1);
+        const missingElevation = this.MISSING_ELEVATION * elevationFactor;
+
+        const coordinates = new Array(values.length / 2);
+        let latitude = 0;
+        let longitude = 0;
+        let elevation = 0;
+        for (let i = 0; i < coordinates.length; i++) {
+            latitude += values[2 * i];
+            longitude += values[2 * i + 1];
+            if (elevations) {
+                elevation += elevations[i];
+            }
+            if (elevations && elevation !== missingElevation) {
+                coordinates[i] = [longitude / factor, latitude / factor, elevation / elevationFactor];
+            } else {
+                coordinates[i] = [longitude / factor, latitude / factor];
+            }
+        }
+        return coordinates;
+    },
+
+    /**
+     * Decode the signed integer deltas of a Google encoded polyline string
+     * @param {string} encoded - Encoded string
+     * @returns {Array<number>} Delta values in encoding order
+     */
+    decodePolylineValues: function(encoded) {
+        const values = [];
+        let index = 0;
+        while (index < encoded.length) {
+            let result = 0;
+            let shift = 0;
+            let byte;
+            do {
+                byte = encoded.charCodeAt(index++) - 63;
+                // Multiplication rather than << so values past 31 bits stay exact
+                result += (byte & 0x1f) * Math.pow(2, shift);
+                shift += 5;
+            } while (byte >= 0x20);
+            values.push(result % 2 === 1 ? -(result + 1) / 2 : result / 2);
+        }
+        return values;
+    },
+
     /**
      * Display route on map
      * @param {object} routeData - Route data from API
@@ -110,9 +177,17 @@ window.TripWeather.Managers.Route = {
             return [coord[1], coord[0]];
         });
 
+        // Only the vertices that matter at the current zoom are drawn; the full geometry
+        // is kept for the route statistics and redrawn from on every zoom change
+        this.routeCoordinates = routeCoordinates;
+        this.routeDetail = routeData.detailLevels && routeData.detailTolerances
+                && routeData.detailLevels.length === routeCoordinates.length
+            ? { levels: routeData.detailLevels, tolerances: routeData.detailTolerances }
+            : null;
+
         // Create polyline for route - changed color from green (#27ae60) to blue (#0066cc)
         const map = window.TripWeather.Managers.Map.getMap();
-        const routePolyline = L.polyline(routeCoordinates, {
+        const routePolyline = L.polyline(this.getVisibleCoordinates(map), {
             color: '#0066cc',
             weight: 4,
             opacity: 0.8,
@@ -121,6 +196,11 @@ window.TripWeather.Managers.Route = {
 
         this.routePolylines.push(routePolyline);
 
+        if (this.routeDetail && !this.zoomHandler) {
+            this.zoomHandler = this.updateRouteDetail.bind(this);
+            map.on('zoomend', this.zoomHandler);
+        }
+
         // Fit map to show entire route
         window.TripWeather.Managers.Map.fitBounds(routeCoordinates, { padding: [50, 50] });
 
@@ -136,13 +216,11 @@ window.TripWeather.Managers.Route = {
             this.addDistanceLabels(routeData.segments, routeCoordinates);
         }
         
-        // Fetch weather for all waypoints after route calculation
+        // Fetch weather for all waypoints after route calculation in one batch
         const waypoints = window.TripWeather.Managers.Waypoint.getAllWaypoints();
-        waypoints.forEach(waypoint => {
-            if (waypoint.date && waypoint.time) {
-                window.TripWeather.Managers.Waypoint.fetchWeatherForWaypoint(waypoint);
-            }
-        });
+        window.TripWeather.Managers.Waypoint.fetchWeatherForWaypoints(
+            waypoints.filter(waypoint => waypoint.date && waypoint.time)
+        );
 
         // Log route information
         console.log('Route calculated:', {
@@ -163,6 +241,44 @@ window.TripWeather.Managers.Route = {
         }
     },
 
+    /**
+     * Route vertices worth drawing at the map's current zoom. A level of detail is used
+     * when its tolerance is under one screen pixel, so the dropped vertices would not
+     * have moved the line visibly.
+     * @param {object} map - Leaflet map
+     * @returns {Array} [lat, lng] coordinates
+     */
+    getVisibleCoordinates: function(map) {
+        const coordinates = this.routeCoordinates || [];
+        const detail = this.routeDetail;
+        if (!detail || !map) {
+            return coordinates;
+        }
+
+        const latitude = map.getCenter().lat * Math.PI / 180;
+        const metersPerPixel = 40075016.686 * Math.cos(latitude) / Math.pow(2, map.getZoom() + 8);
+        let level = 0;
+        while (level < detail.tolerances.length && detail.tolerances[level] <= metersPerPixel) {
+            level++;
+        }
+        if (level === 0) {
+            return coordinates;
+        }
+        return coordinates.filter(function(coordinate, i) {
+            return detail.levels[i] >= level;
+        });
+    },
+
+    /**
+     * Redraw the route polyline at the level of detail for the new zoom
+     */
+    updateRouteDetail: function() {
+        const map = window.TripWeather.Managers.Map.getMap();
+        if (map && this.routePolylines.length > 0) {
+            this.routePolylines[0].setLatLngs(this.getVisibleCoordinates(map));
+        }
+    },
+
     /**
      * Update route statistics display
      * @param {object} routeData - Route data from API
@@ -260,9 +376,6 @@ window.TripWeather.Managers.Route = {
                     if (arrivalDateTime.length === 2) {
                         waypoint.date = arrivalDateTime[0];
                         waypoint.time = arrivalDateTime[1];
-                        
-                        // Fetch weather for updated arrival time
-                        window.TripWeather.Managers.Waypoint.fetchWeatherForWaypoint(waypoint);
                     }
                 }
                 
@@ -609,8 +722,14 @@ window.TripWeather.Managers.Route = {
             this.routePolylines.forEach(function(polyline) {
                 map.removeLayer(polyline);
             });
+            if (this.zoomHandler) {
+                map.off('zoomend', this.zoomHandler);
+            }
         }
         this.routePolylines = [];
+        this.routeCoordinates = null;
+        this.routeDetail = null;
+        this.zoomHandler = null;
         
         // Clear distance labels
         this.clearDistanceLabels();
@@ -489,13 +489,13 @@ window.TripWeather.Managers.Search = {
                             waypoint, // Pass the existing waypoint object
                             true // Skip validation for loaded routes
                         );
-                        
-                        // Fetch weather for each waypoint if date and time are available
-                        if (waypoint.date && waypoint.time) {
-                            window.TripWeather.Managers.Waypoint.fetchWeatherForWaypoint(waypoint);
-                        }
                     });
                     
+                    // Fetch weather for all waypoints with date and time in one batch
+                    window.TripWeather.Managers.Waypoint.fetchWeatherForWaypoints(
+                        window.TripWeather.Managers.Waypoint.getAllWaypoints().filter(waypoint => waypoint.date && waypoint.time)
+                    );
+                    
                     // Update current route tracking
                     window.TripWeather.App.currentRoute.id = response.id;
                     window.TripWeather.App.currentRoute.userId = response.userId;
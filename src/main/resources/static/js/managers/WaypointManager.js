@@ -661,6 +661,37 @@ window.TripWeather.Managers.Waypoint = {
             });
     },
 
+    /**
+     * Fetch weather for several waypoints with a single streamed request. Each
+     * waypoint is updated as soon as its forecast arrives.
+     * @param {Array} waypoints - Waypoint objects
+     */
+    fetchWeatherForWaypoints: function(waypoints) {
+        if (!waypoints || waypoints.length === 0) {
+            return Promise.resolve();
+        }
+
+        waypoints.forEach(function(waypoint) {
+            waypoint.weatherLoading = true;
+            waypoint.weather = null;
+        });
+
+        if (window.TripWeather.Managers.WaypointRenderer) {
+            window.TripWeather.Managers.WaypointRenderer.updateTable();
+        }
+
+        return window.TripWeather.Services.Weather.streamWeatherForWaypoints(waypoints, function(index, weatherData) {
+            const waypoint = waypoints[index];
+            waypoint.weather = weatherData;
+            waypoint.weatherLoading = false;
+
+            if (window.TripWeather.Managers.WaypointRenderer) {
+                window.TripWeather.Managers.WaypointRenderer.updateTable();
+                window.TripWeather.Managers.WaypointRenderer.updateMarkerWithWeather(waypoint);
+            }
+        });
+    },
+
     /**
      * Get waypoint by sequence
      * @param {number} sequence - Waypoint sequence
@@ -63,6 +63,218 @@ window.TripWeather.Services.Weather = {
             });
     },
 
+    /**
+     * Get weather for several waypoints with one batch request. Waypoints already in
+     * the cache are answered locally; the rest are sent to the server together.
+     * @param {Array} waypoints - Waypoint objects with lat, lng, date, time
+     * @returns {Promise<Array>} - Promise that resolves to weather data in waypoint order
+     */
+    getWeatherForWaypoints: function(waypoints) {
+        const self = this;
+        const results = new Array(waypoints.length);
+        const pending = [];
+
+        waypoints.forEach(function(waypoint, index) {
+            if (!waypoint || !waypoint.lat || !waypoint.lng) {
+                results[index] = { error: 'Invalid waypoint coordinates' };
+                return;
+            }
+
+            const cacheKey = self._createWeatherCacheKey(waypoint);
+            if (self._weatherCache && self._weatherCache[cacheKey]) {
+                results[index] = self._weatherCache[cacheKey];
+            } else {
+                pending.push({ index: index, cacheKey: cacheKey, waypoint: waypoint });
+            }
+        });
+
+        if (pending.length === 0) {
+            return Promise.resolve(results);
+        }
+
+        const requestBody = pending.map(function(entry) {
+            return {
+                latitude: entry.waypoint.lat,
+                longitude: entry.waypoint.lng,
+                date: entry.waypoint.date,
+                time: entry.waypoint.time
+            };
+        });
+
+        return window.TripWeather.Utils.Helpers.httpPost('/api/weather/forecast/batch', requestBody)
+            .then(function(weatherList) {
+                if (!self._weatherCache) {
+                    self._weatherCache = {};
+                }
+                pending.forEach(function(entry, i) {
+                    const weatherData = weatherList[i] || { error: 'No weather data returned' };
+                    results[entry.index] = weatherData;
+                    if (!weatherData.error) {
+                        self._weatherCache[entry.cacheKey] = weatherData;
+                    }
+                });
+                return results;
+            })
+            .catch(function(error) {
+                console.warn('Failed to fetch batch weather data:', error);
+                pending.forEach(function(entry) {
+                    results[entry.index] = { error: 'Failed to fetch weather data' };
+                });
+                return results;
+            });
+    },
+
+    /**
+     * Stream weather for several waypoints. Cached waypoints are reported immediately
+     * and the rest are reported one by one as the server resolves them, so a slow
+     * forecast does not hold up the others. Waypoints the stream does not deliver,
+     * because it failed or ended early, are fetched with a single batch request.
+     * @param {Array} waypoints - Waypoint objects with lat, lng, date, time
+     * @param {function} onResult - Called with (index, weatherData) for each waypoint
+     * @returns {Promise<void>} - Promise that resolves when every waypoint has a result
+     */
+    streamWeatherForWaypoints: function(waypoints, onResult) {
+        const self = this;
+        const pending = [];
+
+        waypoints.forEach(function(waypoint, index) {
+            if (!waypoint || !waypoint.lat || !waypoint.lng) {
+                onResult(index, { error: 'Invalid waypoint coordinates' });
+                return;
+            }
+
+            const cacheKey = self._createWeatherCacheKey(waypoint);
+            if (self._weatherCache && self._weatherCache[cacheKey]) {
+                onResult(index, self._weatherCache[cacheKey]);
+            } else {
+                pending.push({ index: index, cacheKey: cacheKey, waypoint: waypoint, done: false });
+            }
+        });
+
+        if (pending.length === 0) {
+            return Promise.resolve();
+        }
+
+        const requestBody = pending.map(function(entry) {
+            return {
+                latitude: entry.waypoint.lat,
+                longitude: entry.waypoint.lng,
+                date: entry.waypoint.date,
+                time: entry.waypoint.time
+            };
+        });
+
+        const handleEvent = function(eventName, data) {
+            if (eventName !== 'forecast') {
+                return;
+            }
+            const event = JSON.parse(data);
+            const entry = pending[event.index];
+            if (!entry || entry.done) {
+                return;
+            }
+            const weatherData = event.weather || { error: 'No weather data returned' };
+            entry.done = true;
+            if (!weatherData.error) {
+                if (!self._weatherCache) {
+                    self._weatherCache = {};
+                }
+                self._weatherCache[entry.cacheKey] = weatherData;
+            }
+            onResult(entry.index, weatherData);
+        };
+
+        const fetchRemaining = function() {
+            const remaining = pending.filter(function(entry) { return !entry.done; });
+            if (remaining.length === 0) {
+                return Promise.resolve();
+            }
+            return self.getWeatherForWaypoints(remaining.map(function(entry) { return entry.waypoint; }))
+                .then(function(weatherList) {
+                    remaining.forEach(function(entry, i) {
+                        entry.done = true;
+                        onResult(entry.index, weatherList[i]);
+                    });
+                });
+        };
+
+        return fetch('/api/weather/forecast/stream', {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json',
+                'Accept': 'text/event-stream'
+            },
+            body: JSON.stringify(requestBody)
+        })
+        .then(function(response) {
+            if (!response.ok || !response.body) {
+                throw new Error('HTTP error! status: ' + response.status);
+            }
+            return self._readEventStream(response.body.getReader(), handleEvent)
+                .then(function() {
+                    // The stream can end before every result was sent, e.g. on a server timeout
+                    const missing = pending.filter(function(entry) { return !entry.done; }).length;
+                    if (missing > 0) {
+                        console.warn('Weather stream ended with ' + missing + ' waypoints outstanding, '
+                            + 'fetching them with a batch request');
+                    }
+                    return fetchRemaining();
+                });
+        })
+        .catch(function(error) {
+            console.warn('Weather stream failed, falling back to batch request:', error);
+            return fetchRemaining();
+        });
+    },
+
+    /**
+     * Read a Server-Sent Events stream and pass each event to a handler
+     * @param {ReadableStreamDefaultReader} reader - Response body reader
+     * @param {function} onEvent - Called with (eventName, data) for each event
+     * @returns {Promise<void>} - Promise that resolves when the stream ends
+     * @private
+     */
+    _readEventStream: function(reader, onEvent) {
+        const decoder = new TextDecoder();
+        let buffer = '';
+
+        const dispatch = function(block) {
+            let eventName = 'message';
+            const dataLines = [];
+            block.split('\n').forEach(function(line) {
+                if (line.startsWith('event:')) {
+                    eventName = line.substring(6).trim();
+                } else if (line.startsWith('data:')) {
+                    dataLines.push(line.substring(5));
+                }
+            });
+            if (dataLines.length > 0) {
+                onEvent(eventName, dataLines.join('\n'));
+            }
+        };
+
+        const pump = function() {
+            return reader.read().then(function(result) {
+                if (result.done) {
+                    if (buffer.trim()) {
+                        dispatch(buffer);
+                    }
+                    return;
+                }
+                buffer += decoder.decode(result.value, { stream: true }).replace(/\r\n/g, '\n');
+                let separator = buffer.indexOf('\n\n');
+                while (separator !== -1) {
+                    dispatch(buffer.substring(0, separator));
+                    buffer = buffer.substring(separator + 2);
+                    separator = buffer.indexOf('\n\n');
+                }
+                return pump();
+            });
+        };
+
+        return pump();
+    },
+
     /**
      * Format weather data for display in UI
      * @param {object} weather - Weather data object
@@ -0,0 +1,114 @@
+package com.pjr22.tripweather.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTests {
+
+	private static CircuitBreaker breaker(Duration openDuration) {
+		// Bad requests are the caller's fault and say nothing about the upstream
+		return new CircuitBreaker("test", 3, openDuration, e -> !(e instanceof IllegalArgumentException));
+	}
+
+	private static void fail(CircuitBreaker breaker) {
+		assertThrows(IllegalStateException.class, () -> breaker.execute(() -> {
+			throw new IllegalStateException("upstream error");
+		}));
+	}
+
+	private static void open(CircuitBreaker breaker) {
+		for (int i = 0; i < 3; i++) {
+			fail(breaker);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	void opensAfterConsecutiveFailures() {
+		CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+		fail(breaker);
+		fail(breaker);
+		// A success in between starts the count again
+		assertEquals("ok", breaker.execute(() -> "ok"));
+		fail(breaker);
+		fail(breaker);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		fail(breaker);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		AtomicInteger calls = new AtomicInteger();
+		assertThrows(CircuitBreaker.CircuitOpenException.class, () -> breaker.execute(calls::incrementAndGet));
+		assertEquals(0, calls.get());
+
+		CircuitBreaker.CircuitStats stats = breaker.stats();
+		assertEquals(CircuitBreaker.State.OPEN, stats.state());
+		assertEquals(3, stats.consecutiveFailures());
+		assertEquals(1, stats.timesOpened());
+		assertEquals(1, stats.rejected());
+		assertNotNull(stats.retryAt());
+	}
+
+	@Test
+	void ignoresErrorsThatAreNotTheUpstreamsFault() {
+		CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+		for (int i = 0; i < 10; i++) {
+			assertThrows(IllegalArgumentException.class, () -> breaker.execute(() -> {
+				throw new IllegalArgumentException("bad request");
+			}));
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.stats().consecutiveFailures());
+		assertNull(breaker.stats().retryAt());
+	}
+
+	@Test
+	void closesWhenOneTrialCallSucceedsAfterTheOpenPeriod() throws Exception {
+		CircuitBreaker breaker = breaker(Duration.ofMillis(50));
+		open(breaker);
+		Thread.sleep(60);
+
+		CountDownLatch trialStarted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<String> trial = CompletableFuture.supplyAsync(() -> breaker.execute(() -> {
+			trialStarted.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "trial";
+		}));
+		assertTrue(trialStarted.await(5, TimeUnit.SECONDS));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		// Only the trial goes through while it is running
+		assertThrows(CircuitBreaker.CircuitOpenException.class, () -> breaker.execute(() -> "other"));
+
+		release.countDown();
+		assertEquals("trial", trial.get(5, TimeUnit.SECONDS));
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals("ok", breaker.execute(() -> "ok"));
+	}
+
+	@Test
+	void reopensWhenTheTrialCallFails() throws InterruptedException {
+		CircuitBreaker breaker = breaker(Duration.ofMillis(50));
+		open(breaker);
+		Thread.sleep(60);
+
+		fail(breaker);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(2, breaker.stats().timesOpened());
+		assertThrows(CircuitBreaker.CircuitOpenException.class, () -> breaker.execute(() -> "ok"));
+	}
+}
@@ -0,0 +1,88 @@
+package com.pjr22.tripweather.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTests {
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntry() {
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>("test", 2, Duration.ofMinutes(5));
+		cache.put("a", 1);
+		cache.put("b", 2);
+		// Reading a makes b the least recently used
+		assertEquals(1, cache.get("a"));
+		cache.put("c", 3);
+
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.get("a"));
+		assertEquals(3, cache.get("c"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.stats().evictions());
+	}
+
+	@Test
+	void expiresEntriesAfterTheirTtl() throws InterruptedException {
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>("test", 10, Duration.ofMinutes(5));
+		cache.put("short", 1, Duration.ofMillis(20));
+		cache.put("long", 2);
+		assertEquals(1, cache.get("short"));
+
+		Thread.sleep(40);
+		assertNull(cache.get("short"));
+		assertEquals(2, cache.get("long"));
+		// The expired entry was dropped when it was read
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void listsKeysAboutToExpireWithoutTouchingThem() {
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>("test", 2, Duration.ofMinutes(5));
+		cache.put("soon", 1, Duration.ofSeconds(30));
+		cache.put("later", 2, Duration.ofMinutes(10));
+
+		assertEquals(List.of("soon"), cache.keysExpiringWithin(Duration.ofMinutes(1)));
+		assertEquals(List.of("soon", "later"), cache.keysExpiringWithin(Duration.ofMinutes(20)));
+		// Listing is not an access, so "soon" is still the least recently used
+		cache.put("new", 3);
+		assertNull(cache.get("soon"));
+		assertEquals(0, cache.stats().hits());
+	}
+
+	@Test
+	void ignoresValuesThatCannotBeCached() {
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>("test", 10, Duration.ofMinutes(5));
+		cache.put("null", null);
+		cache.put("zero", 1, Duration.ZERO);
+		cache.put("negative", 1, Duration.ofSeconds(-1));
+		cache.put("none", 1, null);
+
+		assertEquals(0, cache.size());
+		assertThrows(IllegalArgumentException.class, () -> new ExpiringCache<>("test", 0, Duration.ofMinutes(5)));
+	}
+
+	@Test
+	void countsHitsAndMisses() {
+		ExpiringCache<String, Integer> cache = new ExpiringCache<>("points", 10, Duration.ofMinutes(5));
+		assertEquals(0.0, cache.stats().getHitRatio());
+		cache.put("a", 1);
+		cache.get("a");
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+
+		ExpiringCache.CacheStats stats = cache.stats();
+		assertEquals("points", stats.name());
+		assertEquals(1, stats.size());
+		assertEquals(10, stats.maxSize());
+		assertEquals(3, stats.hits());
+		assertEquals(1, stats.misses());
+		assertEquals(0.75, stats.getHitRatio());
+	}
+}
@@ -0,0 +1,42 @@
+package com.pjr22.tripweather.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class GeohashTests {
+
+	@Test
+	void matchesReferenceHashes() {
+		// Published examples from the original geohash.org service and its documentation
+		assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+		assertEquals("ezs42", Geohash.encode(42.6, -5.6, 5));
+		assertEquals("s00000000000", Geohash.encode(0.0, 0.0, 12));
+		assertEquals("000000", Geohash.encode(-90.0, -180.0, 6));
+		assertEquals("zzzzzz", Geohash.encode(89.99999, 179.99999, 6));
+	}
+
+	@Test
+	void shorterHashIsPrefix() {
+		String full = Geohash.encode(39.7392, -104.9903, Geohash.MAX_PRECISION);
+		for (int precision = 1; precision < Geohash.MAX_PRECISION; precision++) {
+			assertEquals(full.substring(0, precision), Geohash.encode(39.7392, -104.9903, precision));
+		}
+	}
+
+	@Test
+	void nearbyPointsShareCell() {
+		// A few meters apart, well inside one of the 38 x 19 m cells at precision 8
+		String cell = Geohash.encode(39.739210, -104.990310, 8);
+		assertEquals(cell, Geohash.encode(39.739230, -104.990330, 8));
+		assertNotEquals(cell, Geohash.encode(39.741, -104.990310, 8));
+	}
+
+	@Test
+	void rejectsInvalidPrecision() {
+		assertThrows(IllegalArgumentException.class, () -> Geohash.encode(0, 0, 0));
+		assertThrows(IllegalArgumentException.class, () -> Geohash.encode(0, 0, Geohash.MAX_PRECISION + 1));
+	}
+}
@@ -0,0 +1,137 @@
+package com.pjr22.tripweather.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class InFlightRequestRegistryTests {
+
+	private final InFlightRequestRegistry registry = new InFlightRequestRegistry();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterEach
+	void stopExecutor() {
+		executor.shutdownNow();
+	}
+
+	private InFlightRequestRegistry.InFlightStats stats(String upstream) {
+		return registry.getStats().stream().filter(stats -> stats.upstream().equals(upstream)).findFirst()
+				.orElseThrow();
+	}
+
+	/**
+	 * Wait until the given number of callers have joined calls to the upstream
+	 */
+	private void awaitCoalesced(String upstream, long coalesced) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (stats(upstream).coalesced() < coalesced) {
+			assertTrue(System.currentTimeMillis() < deadline, "callers did not join in time");
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Start a call to the upstream that does not finish until the latch is released
+	 */
+	private <T> CompletableFuture<T> startBlockedCall(String upstream, String key, CountDownLatch release,
+			Supplier<T> call) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CompletableFuture<T> result = CompletableFuture.supplyAsync(() -> registry.execute(upstream, key, () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return call.get();
+		}), executor);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return result;
+	}
+
+	@Test
+	void sharesOneCallBetweenConcurrentIdenticalCallers() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Object shared = new Object();
+		CompletableFuture<Object> first = startBlockedCall("weather.gov", "/points/1,2", release, () -> {
+			calls.incrementAndGet();
+			return shared;
+		});
+
+		List<CompletableFuture<Object>> joined = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			joined.add(CompletableFuture.supplyAsync(() -> registry.execute("weather.gov", "/points/1,2", () -> {
+				calls.incrementAndGet();
+				return new Object();
+			}), executor));
+		}
+		awaitCoalesced("weather.gov", 5);
+		assertEquals(1, stats("weather.gov").inFlight());
+		release.countDown();
+
+		assertSame(shared, first.get(5, TimeUnit.SECONDS));
+		for (CompletableFuture<Object> result : joined) {
+			assertSame(shared, result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, calls.get());
+		assertEquals(new InFlightRequestRegistry.InFlightStats("weather.gov", 1, 5, 0), stats("weather.gov"));
+	}
+
+	@Test
+	void passesTheFailureToEveryCaller() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		IllegalStateException failure = new IllegalStateException("upstream down");
+		CompletableFuture<Object> first = startBlockedCall("ors", "key", release, () -> {
+			throw failure;
+		});
+		CompletableFuture<Object> joined = CompletableFuture.supplyAsync(
+				() -> registry.execute("ors", "key", Object::new), executor);
+		awaitCoalesced("ors", 1);
+		release.countDown();
+
+		ExecutionException firstError = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+		assertSame(failure, firstError.getCause());
+		ExecutionException joinedError = assertThrows(ExecutionException.class,
+				() -> joined.get(5, TimeUnit.SECONDS));
+		assertSame(failure, joinedError.getCause());
+
+		// The failed call is not remembered
+		assertEquals("ok", registry.execute("ors", "key", () -> "ok"));
+		assertEquals(2, stats("ors").executed());
+	}
+
+	@Test
+	void runsDifferentCallsSeparately() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<String> blocked = startBlockedCall("nrel", "a", release, () -> "a");
+
+		// Another key or upstream does not wait for the blocked call
+		assertEquals("b", registry.execute("nrel", "b", () -> "b"));
+		assertEquals("other", registry.execute("geoapify", "a", () -> "other"));
+		assertEquals(1, stats("nrel").inFlight());
+		release.countDown();
+		assertEquals("a", blocked.get(5, TimeUnit.SECONDS));
+
+		// Only concurrent calls are shared; a later identical call goes upstream again
+		assertEquals("again", registry.execute("nrel", "a", () -> "again"));
+		assertEquals(new InFlightRequestRegistry.InFlightStats("nrel", 3, 0, 0), stats("nrel"));
+		assertEquals(List.of("geoapify", "nrel"),
+				registry.getStats().stream().map(InFlightRequestRegistry.InFlightStats::upstream).toList());
+	}
+}
@@ -0,0 +1,110 @@
+package com.pjr22.tripweather.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pjr22.tripweather.model.WeatherCacheEntry;
+import com.pjr22.tripweather.repository.WeatherCacheRepository;
+
+class PersistentWeatherCacheTests {
+
+	private WeatherCacheRepository repository;
+	private PersistentWeatherCache cache;
+
+	@BeforeEach
+	void createCache() {
+		repository = mock(WeatherCacheRepository.class);
+		when(repository.findByCacheKeyAndExpiresAtAfter(any(), any())).thenReturn(Optional.empty());
+		cache = new PersistentWeatherCache(repository, null, true, false, 60);
+	}
+
+	private static WeatherCacheRepository.StoredKey storedKey(String cacheKey, Instant expiresAt) {
+		return new WeatherCacheRepository.StoredKey() {
+
+			@Override
+			public String getCacheKey() {
+				return cacheKey;
+			}
+
+			@Override
+			public Instant getExpiresAt() {
+				return expiresAt;
+			}
+		};
+	}
+
+	@Test
+	void queriesEveryLookupUntilTheKeysAreLoaded() {
+		assertNull(cache.getForecast("https://example.com/a"));
+		assertNull(cache.getForecast("https://example.com/a"));
+		verify(repository, times(2)).findByCacheKeyAndExpiresAtAfter(eq("forecast:https://example.com/a"), any());
+		assertEquals(-1, cache.stats().size());
+	}
+
+	@Test
+	void answersUnknownKeysWithoutAQuery() {
+		Instant later = Instant.now().plus(Duration.ofHours(1));
+		when(repository.findByExpiresAtAfter(any())).thenReturn(List.of(
+				storedKey("forecast:https://example.com/a", later),
+				storedKey("forecast:https://example.com/old", Instant.now().minusSeconds(1))));
+		when(repository.findByCacheKeyAndExpiresAtAfter(eq("forecast:https://example.com/a"), any()))
+				.thenReturn(Optional.of(new WeatherCacheEntry("forecast:https://example.com/a", new byte[] { 1 }, later)));
+		cache.refreshStoredKeys();
+
+		assertNull(cache.getForecast("https://example.com/b"));
+		assertNull(cache.getForecast("https://example.com/old"));
+		assertNull(cache.getPoints("https://example.com/a"));
+		verify(repository, never()).findByCacheKeyAndExpiresAtAfter(eq("forecast:https://example.com/b"), any());
+		verify(repository, never()).findByCacheKeyAndExpiresAtAfter(eq("forecast:https://example.com/old"), any());
+		verify(repository, never()).findByCacheKeyAndExpiresAtAfter(eq("points:https://example.com/a"), any());
+
+		assertNotNull(cache.getForecast("https://example.com/a"));
+		verify(repository).findByCacheKeyAndExpiresAtAfter(eq("forecast:https://example.com/a"), any());
+		assertEquals(1, cache.stats().hits());
+		assertEquals(3, cache.stats().misses());
+	}
+
+	@Test
+	void remembersKeysItStores() {
+		when(repository.findByExpiresAtAfter(any())).thenReturn(List.of());
+		cache.refreshStoredKeys();
+		assertEquals(0, cache.stats().size());
+
+		cache.putPoints("39.7392,-104.9903", "https://example.com/a", Duration.ofMinutes(5));
+		assertEquals(1, cache.stats().size());
+		cache.getPoints("39.7392,-104.9903");
+		verify(repository).findByCacheKeyAndExpiresAtAfter(eq("points:39.7392,-104.9903"), any());
+
+		// A reload that started before the write does not lose it
+		cache.refreshStoredKeys();
+		assertEquals(1, cache.stats().size());
+		verify(repository, never()).count();
+	}
+
+	@Test
+	void keepsTheKeysWhenTheDatabaseFails() {
+		when(repository.findByExpiresAtAfter(any())).thenThrow(new IllegalStateException("down"));
+		cache.refreshStoredKeys();
+		assertEquals(-1, cache.stats().size());
+
+		// The tier is bypassed for a while after an error
+		assertNull(cache.getForecast("https://example.com/a"));
+		verify(repository, never()).findByCacheKeyAndExpiresAtAfter(any(), any());
+	}
+}
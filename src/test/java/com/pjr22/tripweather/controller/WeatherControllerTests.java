@@ -0,0 +1,108 @@
+package com.pjr22.tripweather.controller;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.pjr22.tripweather.dto.WeatherForecastRequest;
+import com.pjr22.tripweather.model.DepartureOption;
+import com.pjr22.tripweather.model.WeatherData;
+import com.pjr22.tripweather.service.DepartureWindowService;
+import com.pjr22.tripweather.service.RouteWeatherService;
+import com.pjr22.tripweather.service.WeatherService;
+
+class WeatherControllerTests {
+
+	private WeatherService weatherService;
+	private DepartureWindowService departureWindowService;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void createController() {
+		weatherService = mock(WeatherService.class);
+		departureWindowService = mock(DepartureWindowService.class);
+		mockMvc = MockMvcBuilders.standaloneSetup(new WeatherController(weatherService,
+				mock(RouteWeatherService.class), departureWindowService)).build();
+	}
+
+	private static WeatherData weather(String condition) {
+		WeatherData weather = new WeatherData();
+		weather.setCondition(condition);
+		return weather;
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void answersABatchInRequestOrder() throws Exception {
+		when(weatherService.getWeatherForecasts(any())).thenReturn(List.of(weather("Sunny"),
+				WeatherData.createError("Invalid coordinates"), weather("Snow")));
+
+		mockMvc.perform(post("/api/weather/forecast/batch").contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON).content("""
+				[{"latitude": 39.7392, "longitude": -104.9903, "date": "2025-10-16", "time": "14:00"},
+				 {"longitude": -104.9903, "date": "2025-10-16", "time": "15:00"},
+				 {"latitude": 40.015, "longitude": -105.2705, "date": "2025-10-16", "time": "16:00"}]"""))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(3)))
+				.andExpect(jsonPath("$[0].condition").value("Sunny"))
+				.andExpect(jsonPath("$[1].error").value("Invalid coordinates"))
+				.andExpect(jsonPath("$[2].condition").value("Snow"));
+
+		ArgumentCaptor<List<WeatherForecastRequest>> requests = ArgumentCaptor.forClass(List.class);
+		verify(weatherService).getWeatherForecasts(requests.capture());
+		assertEquals(3, requests.getValue().size());
+		assertEquals(40.015, requests.getValue().get(2).getLatitude());
+		assertEquals("16:00", requests.getValue().get(2).getTime());
+	}
+
+	@Test
+	void rejectsAnEmptyBatch() throws Exception {
+		mockMvc.perform(post("/api/weather/forecast/batch").contentType(MediaType.APPLICATION_JSON).content("[]"))
+				.andExpect(status().isBadRequest());
+		verifyNoInteractions(weatherService);
+	}
+
+	@Test
+	void passesTheDepartureWindowThrough() throws Exception {
+		when(departureWindowService.rankDepartures(any(), eq(6), eq(15), isNull(), eq(2))).thenReturn(List.of(
+				new DepartureOption(1, "2025-10-16 10:00", "2025-10-16 11:00", "2025-10-16T10:00:00Z", 0.0, 0,
+						"Sunny", 0)));
+
+		mockMvc.perform(post("/api/weather/departures").contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content("{\"route\": {}, \"windowHours\": 6, \"stepMinutes\": 15, \"limit\": 2}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(1)))
+				.andExpect(jsonPath("$[0].departureTime").value("2025-10-16 10:00"));
+	}
+
+	@Test
+	void rejectsDeparturesForAnUnusableRoute() throws Exception {
+		when(departureWindowService.rankDepartures(any(), any(), any(), any(), any()))
+				.thenThrow(new IllegalArgumentException("Route has no points"));
+
+		mockMvc.perform(post("/api/weather/departures").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"route\": {}}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/api/weather/departures").contentType(MediaType.APPLICATION_JSON).content("{}"))
+				.andExpect(status().isBadRequest());
+	}
+}
@@ -0,0 +1,98 @@
+package com.pjr22.tripweather.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.pjr22.tripweather.model.WeatherData;
+import com.pjr22.tripweather.service.WeatherService;
+
+class WeatherStreamControllerTests {
+
+	private static final String REQUESTS = """
+			[{"latitude": 39.7392, "longitude": -104.9903, "date": "2025-10-16", "time": "14:00"},
+			 {"latitude": 40.015, "longitude": -105.2705, "date": "2025-10-16", "time": "15:00"},
+			 {"latitude": 40.5853, "longitude": -105.0844, "date": "2025-10-16", "time": "16:00"}]""";
+
+	private WeatherService weatherService;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void createController() {
+		weatherService = mock(WeatherService.class);
+		mockMvc = MockMvcBuilders.standaloneSetup(new WeatherStreamController(weatherService)).build();
+	}
+
+	private static WeatherData weather(String condition) {
+		WeatherData weather = new WeatherData();
+		weather.setCondition(condition);
+		return weather;
+	}
+
+	/**
+	 * The event names and data lines of a Server-Sent Events body, in order
+	 */
+	private static List<String> events(MvcResult result) throws Exception {
+		List<String> events = new ArrayList<>();
+		String name = null;
+		for (String line : result.getResponse().getContentAsString().split("\n")) {
+			if (line.startsWith("event:")) {
+				name = line.substring("event:".length());
+			} else if (line.startsWith("data:")) {
+				events.add(name + " " + line.substring("data:".length()));
+			}
+		}
+		return events;
+	}
+
+	@Test
+	void sendsEachForecastAsSoonAsItIsReady() throws Exception {
+		List<CompletableFuture<WeatherData>> forecasts = List.of(new CompletableFuture<>(),
+				new CompletableFuture<>(), new CompletableFuture<>());
+		when(weatherService.startWeatherForecasts(any())).thenReturn(forecasts);
+
+		MvcResult result = mockMvc.perform(post("/api/weather/forecast/stream")
+				.contentType(MediaType.APPLICATION_JSON).content(REQUESTS))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		forecasts.get(2).complete(weather("Snow"));
+		assertEquals(1, events(result).size());
+		forecasts.get(0).complete(weather("Sunny"));
+		forecasts.get(1).complete(WeatherData.createError("Invalid forecast data"));
+
+		List<String> events = events(result);
+		assertEquals(4, events.size());
+		assertTrue(events.get(0).startsWith("forecast {\"index\":2,\"weather\":{\"condition\":\"Snow\""));
+		assertTrue(events.get(1).startsWith("forecast {\"index\":0,\"weather\":{\"condition\":\"Sunny\""));
+		assertTrue(events.get(2).startsWith("forecast {\"index\":1,"));
+		assertTrue(events.get(2).contains("\"error\":\"Invalid forecast data\""));
+		assertEquals("complete {\"count\":3}", events.get(3));
+	}
+
+	@Test
+	void completesAnEmptyStreamAtOnce() throws Exception {
+		MvcResult result = mockMvc.perform(post("/api/weather/forecast/stream")
+				.contentType(MediaType.APPLICATION_JSON).content("[]"))
+				.andReturn();
+
+		assertEquals(List.of("complete {\"count\":0}"), events(result));
+		verifyNoInteractions(weatherService);
+	}
+}
@@ -0,0 +1,78 @@
+package com.pjr22.tripweather.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+class ForecastDictionaryTests {
+
+	private static final String FORECAST = """
+			{"properties": {"periods": [
+				{"startTime": "2025-10-16T14:00:00-06:00", "endTime": "2025-10-16T15:00:00-06:00",
+				 "temperature": 61, "windSpeed": "5 to 10 mph", "windDirection": "NW",
+				 "shortForecast": "Slight Chance Rain Showers"},
+				{"startTime": "2025-10-16T15:00:00-06:00", "endTime": "2025-10-16T16:00:00-06:00",
+				 "temperature": 59, "windSpeed": "15 mph", "windDirection": "NW",
+				 "shortForecast": "Slight Chance Rain Showers"}
+			]}}
+			""";
+
+	/**
+	 * Fill every shared code, leaving room for nothing new
+	 */
+	private static ForecastDictionary fullDictionary() {
+		ForecastDictionary dictionary = new ForecastDictionary();
+		for (int i = 1; i < ForecastDictionary.MAX_CODES; i++) {
+			dictionary.encode("filler " + i);
+		}
+		return dictionary;
+	}
+
+	private static ForecastIndex read(ForecastDictionary dictionary) throws IOException {
+		try (JsonParser parser = new JsonFactory().createParser(FORECAST)) {
+			return ForecastIndex.read(parser, dictionary, 168);
+		}
+	}
+
+	@Test
+	void encodesUntilFull() {
+		ForecastDictionary dictionary = fullDictionary();
+
+		assertEquals(ForecastDictionary.MAX_CODES - 1, dictionary.size());
+		assertEquals("filler 7", dictionary.decode((short) dictionary.encode("filler 7")));
+		assertEquals(ForecastDictionary.FULL, dictionary.encode("Sunny"));
+		assertEquals(0, dictionary.encode(null));
+		assertEquals(1, dictionary.overflowCount());
+	}
+
+	@Test
+	void keepsNewStringsOnceFull() throws IOException {
+		ForecastDictionary dictionary = fullDictionary();
+		ForecastIndex forecast = read(dictionary);
+
+		assertEquals(2, forecast.size());
+		WeatherData first = forecast.toWeatherData(0);
+		assertEquals("Slight Chance Rain Showers", first.getCondition());
+		assertEquals("5 to 10 mph", first.getWindSpeed());
+		assertEquals("NW", first.getWindDirection());
+		assertEquals("F", first.getTemperatureUnit());
+		assertEquals("15 mph", forecast.toWeatherData(1).getWindSpeed());
+		assertTrue(dictionary.overflowCount() > 0);
+	}
+
+	@Test
+	void restoresIntoFullDictionary() throws IOException {
+		byte[] bytes = read(new ForecastDictionary()).toBytes();
+		ForecastIndex restored = ForecastIndex.fromBytes(bytes, fullDictionary());
+
+		assertEquals("Slight Chance Rain Showers", restored.toWeatherData(1).getCondition());
+		assertEquals("15 mph", restored.toWeatherData(1).getWindSpeed());
+		assertEquals(59, restored.toWeatherData(1).getTemperature());
+	}
+}
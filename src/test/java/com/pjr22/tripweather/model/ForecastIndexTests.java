@@ -0,0 +1,210 @@
+package com.pjr22.tripweather.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+class ForecastIndexTests {
+
+	// The format NWS uses, e.g. 2025-10-16T14:00:00-06:00
+	private static final DateTimeFormatter NWS_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+
+	private static ForecastIndex read(String json) throws IOException {
+		try (JsonParser parser = new JsonFactory().createParser(json)) {
+			return ForecastIndex.read(parser, new ForecastDictionary(), 168);
+		}
+	}
+
+	private static String period(String startTime, String endTime, String forecast) {
+		return String.format("""
+				{"startTime": %s, "endTime": %s, "temperature": {"value": 12}, "temperatureUnit": "C",
+				 "windSpeed": "10 mph", "windDirection": "S", "icon": "https://example.com/%s",
+				 "shortForecast": "%s", "probabilityOfPrecipitation": {"value": 40}}""",
+				startTime, endTime, forecast, forecast);
+	}
+
+	private static String forecast(List<String> periods) {
+		return "{\"properties\": {\"periods\": [" + String.join(",", periods) + "]}}";
+	}
+
+	private static String quoted(String value) {
+		return "\"" + value + "\"";
+	}
+
+	/**
+	 * Read a one hour period starting at the timestamp and check it lands where
+	 * OffsetDateTime puts it, both as an instant and as local time in its own offset
+	 */
+	private static void assertParsedLike(String timestamp) throws IOException {
+		OffsetDateTime expected = OffsetDateTime.parse(timestamp);
+		String end = NWS_FORMAT.format(expected.plusHours(1));
+		ForecastIndex index = read(forecast(List.of(period(quoted(timestamp), quoted(end), "Sunny"))));
+
+		assertEquals(1, index.size(), timestamp);
+		long epochSecond = expected.toEpochSecond();
+		assertEquals(0, index.findPeriod(epochSecond), timestamp);
+		assertEquals(-1, index.findPeriod(epochSecond - 1), timestamp);
+		assertEquals(0, index.findPeriod(epochSecond + 3599), timestamp);
+		assertEquals(-1, index.findPeriod(epochSecond + 3600), timestamp);
+
+		LocalDateTime local = expected.toLocalDateTime();
+		assertEquals(0, index.findPeriod(local), timestamp);
+		assertEquals(-1, index.findPeriod(local.minusSeconds(1)), timestamp);
+	}
+
+	@Test
+	void parsesTimestampsLikeOffsetDateTime() throws IOException {
+		for (String timestamp : List.of(
+				"2025-10-16T14:00:00-06:00",
+				"2025-10-16T14:00:00+05:30",
+				"2025-10-16T14:00:00+00:00",
+				"2025-10-16T14:00:00Z",
+				"2025-10-16T14:00:00.500-06:00",
+				"2024-02-29T23:59:59-10:00",
+				"2000-02-29T00:00:00+14:00",
+				"1999-12-31T23:30:00-12:00",
+				"1969-07-20T20:17:40+00:00",
+				"1900-03-01T00:00:00-08:00",
+				"2100-12-31T12:00:00+18:00")) {
+			assertParsedLike(timestamp);
+		}
+
+		Random random = new Random(19);
+		for (int i = 0; i < 2000; i++) {
+			LocalDateTime local = LocalDateTime.of(1950 + random.nextInt(200), 1 + random.nextInt(12), 1, 0, 0)
+					.plusDays(random.nextInt(31))
+					.plusSeconds(random.nextInt(86400));
+			ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(2 * 18 * 4 + 1) - 18 * 4) * 15 * 60);
+			assertParsedLike(NWS_FORMAT.format(OffsetDateTime.of(local, offset)));
+		}
+	}
+
+	@Test
+	void skipsOnlyPeriodsWithBadTimestamps() throws IOException {
+		List<String> periods = new ArrayList<>();
+		periods.add(period(quoted("2025-10-16T14:00:00-06:00"), quoted("2025-10-16T15:00:00-06:00"), "First"));
+		periods.add(period("null", quoted("2025-10-16T16:00:00-06:00"), "NullStart"));
+		periods.add(period(quoted("2025-10-16T16:00:00-06:00"), quoted("not a time"), "Malformed"));
+		periods.add(period(quoted("2025-13-16T17:00:00-06:00"), quoted("2025-10-16T18:00:00-06:00"), "BadMonth"));
+		periods.add(period(quoted("2025-02-30T17:00:00-06:00"), quoted("2025-10-16T18:00:00-06:00"), "BadDay"));
+		periods.add(period(quoted("2025-10-16T24:00:00-06:00"), quoted("2025-10-17T01:00:00-06:00"), "BadHour"));
+		periods.add(period(quoted("2025-10-16T17:00:00+18:30"), quoted("2025-10-16T18:00:00-06:00"), "BadOffset"));
+		periods.add(period("{\"value\": 1}", quoted("2025-10-16T18:00:00-06:00"), "ObjectStart"));
+		periods.add(period(quoted("2025-10-16T17:00:00-06:00"), quoted("2025-10-16T18:00:00-06:00"), "Last"));
+
+		ForecastIndex index = read(forecast(periods));
+
+		assertEquals(2, index.size());
+		assertEquals("First", index.toWeatherData(0).getCondition());
+		assertEquals("Last", index.toWeatherData(1).getCondition());
+	}
+
+	@Test
+	void findsPeriodsLikeALinearScan() throws IOException {
+		// Periods of one to three hours with gaps of up to two hours between some of them
+		Random random = new Random(4);
+		OffsetDateTime start = OffsetDateTime.parse("2025-10-16T00:00:00-06:00");
+		List<long[]> bounds = new ArrayList<>();
+		List<String> periods = new ArrayList<>();
+		OffsetDateTime time = start;
+		for (int i = 0; i < 100; i++) {
+			time = time.plusHours(random.nextInt(3) == 0 ? random.nextInt(3) : 0);
+			OffsetDateTime end = time.plusHours(1 + random.nextInt(3));
+			bounds.add(new long[] { time.toEpochSecond(), end.toEpochSecond() });
+			periods.add(period(quoted(NWS_FORMAT.format(time)), quoted(NWS_FORMAT.format(end)), "Period " + i));
+			time = end;
+		}
+		ForecastIndex index = read(forecast(periods));
+		assertEquals(bounds.size(), index.size());
+
+		for (long t = start.toEpochSecond() - 3600; t < time.toEpochSecond() + 3600; t += 900) {
+			int expected = -1;
+			for (int i = 0; i < bounds.size(); i++) {
+				if (bounds.get(i)[0] <= t && t < bounds.get(i)[1]) {
+					expected = i;
+				}
+			}
+			assertEquals(expected, index.findPeriod(t), "epoch second " + t);
+			LocalDateTime local = LocalDateTime.ofEpochSecond(t, 0, ZoneOffset.ofHours(-6));
+			assertEquals(expected, index.findPeriod(local), local.toString());
+		}
+	}
+
+	@Test
+	void skipsPeriodsThatAreNotObjects() throws IOException {
+		String first = period(quoted("2025-10-16T14:00:00-06:00"), quoted("2025-10-16T15:00:00-06:00"), "First");
+		String last = period(quoted("2025-10-16T15:00:00-06:00"), quoted("2025-10-16T16:00:00-06:00"), "Last");
+		// Fields after the periods must still be read from the right place
+		String json = "{\"properties\": {\"periods\": [null, " + first + ", 7, [\"x\", {}], null, " + last
+				+ "], \"units\": \"us\"}, \"type\": \"Feature\"}";
+
+		ForecastIndex index = read(json);
+
+		assertEquals(2, index.size());
+		assertEquals("First", index.toWeatherData(0).getCondition());
+		assertEquals("Last", index.toWeatherData(1).getCondition());
+	}
+
+	@Test
+	void rejectsWhatOffsetDateTimeRejects() {
+		for (String timestamp : List.of("2025-13-16T17:00:00-06:00", "2025-02-30T17:00:00-06:00",
+				"2025-10-16T24:00:00-06:00", "2025-10-16T17:00:00+18:30")) {
+			// The period test relies on both parsers rejecting these
+			assertThrows(DateTimeParseException.class, () -> OffsetDateTime.parse(timestamp));
+		}
+	}
+
+	@Test
+	void roundTripsThroughBytes() throws IOException {
+		List<String> periods = new ArrayList<>();
+		OffsetDateTime start = OffsetDateTime.parse("2025-11-01T20:00:00-06:00");
+		for (int i = 0; i < 48; i++) {
+			// Crosses the change from daylight saving time, so the offset changes part way through
+			OffsetDateTime periodStart = start.plusHours(i).withOffsetSameInstant(
+					i < 7 ? ZoneOffset.ofHours(-6) : ZoneOffset.ofHours(-7));
+			periods.add(period(quoted(NWS_FORMAT.format(periodStart)),
+					quoted(NWS_FORMAT.format(periodStart.plusHours(1))), "Period " + (i % 5)));
+		}
+		periods.add("""
+				{"startTime": "2025-11-03T20:00:00-07:00", "endTime": "2025-11-03T21:00:00-07:00",
+				 "temperature": null, "windSpeed": null, "probabilityOfPrecipitation": {"value": null}}""");
+		ForecastIndex original = read(forecast(periods));
+
+		ForecastIndex restored = ForecastIndex.fromBytes(original.toBytes(), new ForecastDictionary());
+
+		assertEquals(original.size(), restored.size());
+		for (int i = 0; i < original.size(); i++) {
+			WeatherData expected = original.toWeatherData(i);
+			WeatherData actual = restored.toWeatherData(i);
+			assertEquals(expected.getCondition(), actual.getCondition());
+			assertEquals(expected.getTemperature(), actual.getTemperature());
+			assertEquals(expected.getTemperatureUnit(), actual.getTemperatureUnit());
+			assertEquals(expected.getWindSpeed(), actual.getWindSpeed());
+			assertEquals(expected.getWindDirection(), actual.getWindDirection());
+			assertEquals(expected.getIconUrl(), actual.getIconUrl());
+			assertEquals(expected.getPrecipitationProbability(), actual.getPrecipitationProbability());
+		}
+		for (long t = start.toEpochSecond() - 60; t < start.toEpochSecond() + 50 * 3600; t += 600) {
+			assertEquals(original.findPeriod(t), restored.findPeriod(t));
+		}
+		LocalDateTime local = LocalDateTime.parse("2025-11-02T01:30:00");
+		assertEquals(original.findPeriod(local), restored.findPeriod(local));
+		assertNull(restored.toWeatherData(original.size() - 1).getTemperature());
+		assertNull(restored.toWeatherData(original.size() - 1).getPrecipitationProbability());
+	}
+}
@@ -0,0 +1,316 @@
+package com.pjr22.tripweather.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class RouteGeometryTests {
+
+	/**
+	 * Decode the signed deltas of an encoded polyline, as RouteManager.decodePolylineValues does
+	 */
+	private static List<Long> decodeValues(String encoded) {
+		List<Long> values = new ArrayList<>();
+		int index = 0;
+		while (index < encoded.length()) {
+			long result = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = encoded.charAt(index++) - 63;
+				result |= (long) (b & 0x1f) << shift;
+				shift += 5;
+			} while (b >= 0x20);
+			values.add((result & 1) == 1 ? ~(result >> 1) : result >> 1);
+		}
+		return values;
+	}
+
+	/**
+	 * Running totals of the deltas, divided back down by the precision
+	 */
+	private static double[] decode(String encoded, int precision, int channels, int channel) {
+		List<Long> values = decodeValues(encoded);
+		double factor = Math.pow(10, precision);
+		double[] decoded = new double[values.size() / channels];
+		long value = 0;
+		for (int i = 0; i < decoded.length; i++) {
+			value += values.get(i * channels + channel);
+			decoded[i] = value / factor;
+		}
+		return decoded;
+	}
+
+	@Test
+	void encodesReferencePolyline() {
+		// The example from Google's encoded polyline algorithm documentation
+		RouteGeometry geometry = RouteGeometry.builder(3, false)
+				.add(-120.2, 38.5, Double.NaN)
+				.add(-120.95, 40.7, Double.NaN)
+				.add(-126.453, 43.252, Double.NaN)
+				.build();
+
+		assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", geometry.encodePolyline(5));
+		assertNull(geometry.encodeElevation(1));
+	}
+
+	@Test
+	void roundTripsCoordinatesAtHigherPrecision() {
+		RouteGeometry geometry = RouteGeometry.builder(4, false)
+				.add(179.999999, -89.999999, Double.NaN)
+				.add(-179.999999, 89.999999, Double.NaN)
+				.add(0.000001, -0.000001, Double.NaN)
+				.add(-105.123456, 39.654321, Double.NaN)
+				.build();
+
+		String encoded = geometry.encodePolyline(6);
+		double[] latitudes = decode(encoded, 6, 2, 0);
+		double[] longitudes = decode(encoded, 6, 2, 1);
+		assertEquals(4, latitudes.length);
+		for (int i = 0; i < geometry.size(); i++) {
+			assertEquals(geometry.latitude(i), latitudes[i], 1e-9);
+			assertEquals(geometry.longitude(i), longitudes[i], 1e-9);
+		}
+	}
+
+	@Test
+	void encodesElevationPerVertex() {
+		RouteGeometry geometry = RouteGeometry.builder(4, true)
+				.add(-105.0, 39.0, 1609.34)
+				.add(-105.1, 39.1, 1612.0)
+				.add(-105.2, 39.2, -86.0)
+				.add(-105.3, 39.3, 4345.06)
+				.build();
+
+		double[] elevations = decode(geometry.encodeElevation(1), 1, 1, 0);
+
+		assertEquals(4, elevations.length);
+		assertEquals(1609.3, elevations[0], 1e-9);
+		assertEquals(1612.0, elevations[1], 1e-9);
+		assertEquals(-86.0, elevations[2], 1e-9);
+		assertEquals(4345.1, elevations[3], 1e-9);
+	}
+
+	@Test
+	void encodesUnknownElevationAsSentinel() {
+		RouteGeometry geometry = RouteGeometry.builder(4, true)
+				.add(-105.0, 39.0, 1609.3)
+				.add(-105.1, 39.1, Double.NaN)
+				.add(-105.2, 39.2, 1700.0)
+				.add(-105.3, 39.3, Double.NaN)
+				.build();
+
+		double[] elevations = decode(geometry.encodeElevation(1), 1, 1, 0);
+
+		assertEquals(1609.3, elevations[0], 1e-9);
+		assertEquals(RouteGeometry.MISSING_ELEVATION, elevations[1], 0.0);
+		assertEquals(1700.0, elevations[2], 1e-9);
+		assertEquals(RouteGeometry.MISSING_ELEVATION, elevations[3], 0.0);
+	}
+
+	/**
+	 * A wandering line of about 25 km near Denver, with vertices every few hundred meters
+	 */
+	private static RouteGeometry wanderingLine(int size) {
+		Random random = new Random(17);
+		RouteGeometry.Builder builder = RouteGeometry.builder(size, true);
+		double longitude = -105.0;
+		double latitude = 39.7;
+		for (int i = 0; i < size; i++) {
+			builder.add(longitude, latitude, 1600 + i);
+			longitude += 0.003 + random.nextDouble() * 0.002;
+			latitude += (random.nextDouble() - 0.5) * 0.004;
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Distance in meters from vertex v to the chord from a to b, in the same local
+	 * projection the simplification uses
+	 */
+	private static double distanceToChord(RouteGeometry geometry, int v, int a, int b) {
+		double scale = Math.cos(Math.toRadians((geometry.latitude(a) + geometry.latitude(b)) / 2));
+		double ax = geometry.longitude(a) * scale;
+		double ay = geometry.latitude(a);
+		double dx = geometry.longitude(b) * scale - ax;
+		double dy = geometry.latitude(b) - ay;
+		double px = geometry.longitude(v) * scale - ax;
+		double py = geometry.latitude(v) - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared)) : 0;
+		return Math.hypot(px - t * dx, py - t * dy) * 111_320.0;
+	}
+
+	@Test
+	void keepsEndPointsAndPreservedVertices() {
+		RouteGeometry geometry = wanderingLine(80);
+		int[] preserved = {10, 41, 79, 500};
+		double[] significance = geometry.significance(preserved);
+
+		assertEquals(Double.POSITIVE_INFINITY, significance[0], 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, significance[10], 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, significance[41], 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, significance[79], 0.0);
+
+		RouteGeometry simplified = geometry.simplify(1e9, preserved);
+		assertEquals(4, simplified.size());
+		int[] expected = {0, 10, 41, 79};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(geometry.longitude(expected[i]), simplified.longitude(i), 0.0);
+			assertEquals(geometry.latitude(expected[i]), simplified.latitude(i), 0.0);
+			assertEquals(geometry.elevation(expected[i]), simplified.elevation(i), 0.0);
+		}
+	}
+
+	@Test
+	void simplifiesMonotonicallyInTolerance() {
+		RouteGeometry geometry = wanderingLine(200);
+		int[] preserved = {60, 130};
+		double[] significance = geometry.significance(preserved);
+
+		assertEquals(geometry.size(), geometry.simplify(significance, 0.0).size());
+		int previous = Integer.MAX_VALUE;
+		for (double tolerance : new double[] {0.5, 5, 20, 50, 100, 250, 1000, 1e9}) {
+			RouteGeometry simplified = geometry.simplify(significance, tolerance);
+			assertTrue(simplified.size() <= previous, "tolerance " + tolerance);
+			assertEquals(simplified.size(), geometry.simplify(tolerance, preserved).size());
+			previous = simplified.size();
+		}
+		assertEquals(4, previous);
+	}
+
+	@Test
+	void staysWithinTolerance() {
+		RouteGeometry geometry = wanderingLine(200);
+		double[] significance = geometry.significance(null);
+
+		for (double tolerance : new double[] {5, 20, 50, 100, 250}) {
+			int a = 0;
+			for (int b = 1; b < geometry.size(); b++) {
+				if (significance[b] < tolerance) {
+					continue;
+				}
+				// Every vertex dropped between two kept ones is close to the line joining them
+				for (int v = a + 1; v < b; v++) {
+					double distance = distanceToChord(geometry, v, a, b);
+					assertTrue(distance <= tolerance + 1e-6,
+							"vertex " + v + " is " + distance + " m off at tolerance " + tolerance);
+				}
+				a = b;
+			}
+		}
+	}
+
+	@Test
+	void detailLevelsSelectTheSameVerticesAsSimplify() {
+		RouteGeometry geometry = wanderingLine(200);
+		double[] significance = geometry.significance(new int[] {60, 130});
+		double[] tolerances = {5, 20, 80, 320};
+		int[] levels = RouteGeometry.detailLevels(significance, tolerances);
+
+		assertEquals(geometry.size(), levels.length);
+		assertEquals(tolerances.length, levels[0]);
+		assertEquals(tolerances.length, levels[60]);
+		for (int level = 1; level <= tolerances.length; level++) {
+			RouteGeometry simplified = geometry.simplify(significance, tolerances[level - 1]);
+			int kept = 0;
+			for (int i = 0; i < levels.length; i++) {
+				if (levels[i] >= level) {
+					assertEquals(geometry.longitude(i), simplified.longitude(kept), 0.0);
+					assertEquals(geometry.latitude(i), simplified.latitude(kept), 0.0);
+					kept++;
+				}
+			}
+			assertEquals(simplified.size(), kept, "level " + level);
+		}
+	}
+
+	@Test
+	void growsPastTheExpectedSize() {
+		RouteGeometry.Builder builder = RouteGeometry.builder(2, true);
+		for (int i = 0; i < 100; i++) {
+			builder.add(-105.0 + i * 0.01, 39.0 + i * 0.001, 1500.0 + i);
+		}
+		RouteGeometry geometry = builder.build();
+
+		assertEquals(100, geometry.size());
+		assertEquals(-105.0 + 99 * 0.01, geometry.longitude(99), 0.0);
+		assertEquals(39.0 + 50 * 0.001, geometry.latitude(50), 0.0);
+		assertEquals(1599.0, geometry.elevation(99), 0.0);
+		// Three packed doubles per vertex, with no spare capacity left over
+		assertEquals(48 + 8 * 300, geometry.estimatedHeapBytes());
+
+		RouteGeometry slice = geometry.slice(10, 12);
+		assertEquals(3, slice.size());
+		assertEquals(geometry.longitude(10), slice.longitude(0), 0.0);
+		assertEquals(geometry.elevation(12), slice.elevation(2), 0.0);
+
+		RouteGeometry joined = RouteGeometry.builder(4, true)
+				.addAll(slice, 0).addAll(geometry.slice(12, 13), 1).build();
+		assertEquals(4, joined.size());
+		assertEquals(geometry.latitude(13), joined.latitude(3), 0.0);
+		assertTrue(RouteGeometry.builder(10, false).build().isEmpty());
+	}
+
+	@Test
+	void measuresDistanceAlongTheLine() {
+		// A degree of longitude on the equator, in two unequal steps
+		RouteGeometry geometry = RouteGeometry.builder(3, false)
+				.add(0.0, 0.0, 0).add(0.25, 0.0, 0).add(1.0, 0.0, 0).build();
+		double[] cumulative = geometry.cumulativeDistances();
+
+		assertEquals(0.0, cumulative[0], 0.0);
+		assertEquals(111_195.08 / 4, cumulative[1], 0.01);
+		assertEquals(111_195.08, cumulative[2], 0.01);
+		assertEquals(RouteGeometry.distanceMeters(0, 0, 0, 1), cumulative[2], 1e-6);
+	}
+
+	@Test
+	void writesAndReadsRouteDataJson() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		RouteGeometry geometry = RouteGeometry.builder(2, true)
+				.add(-105.0, 39.0, 1609.5).add(-105.1, 39.1, Double.NaN).build();
+
+		String json = mapper.writeValueAsString(new RouteData(geometry, 1000.0, 60.0));
+		assertTrue(json.contains("\"geometry\":[[-105.0,39.0,1609.5],[-105.1,39.1]]"), json);
+
+		RouteGeometry read = mapper.readValue(json, RouteData.class).getGeometry();
+		assertEquals(2, read.size());
+		assertEquals(1609.5, read.elevation(0), 0.0);
+		assertTrue(Double.isNaN(read.elevation(1)));
+		assertEquals(39.1, read.latitude(1), 0.0);
+	}
+
+	@Test
+	void readsCoordinatesWithAndWithoutElevation() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		RouteGeometry geometry = mapper.readValue("[[-105.0, 39.0, 1609.5], [-105.1, 39.1]]", RouteGeometry.class);
+
+		assertEquals(2, geometry.size());
+		assertTrue(geometry.hasElevation());
+		assertEquals(1609.5, geometry.elevation(0), 0.0);
+		assertTrue(Double.isNaN(geometry.elevation(1)));
+		assertEquals(-105.1, geometry.longitude(1), 0.0);
+		assertEquals(39.1, geometry.latitude(1), 0.0);
+	}
+
+	@Test
+	void rejectsMalformedPoints() {
+		ObjectMapper mapper = new ObjectMapper();
+		for (String route : new String[] {"[[-105.0, 39.0], [-105.1]]", "[[-105.0, 39.0], null]",
+				"[[-105.0, 39.0], [-105.1, \"39.1\"]]", "[[-105.0, 39.0], [[-105.1, 39.1]]]"}) {
+			IOException e = assertThrows(IOException.class, () -> mapper.readValue(route, RouteGeometry.class), route);
+			assertTrue(e.getMessage().startsWith("Invalid route point at index 1"), e.getMessage());
+		}
+	}
+}
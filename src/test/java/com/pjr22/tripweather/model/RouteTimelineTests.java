@@ -0,0 +1,99 @@
+package com.pjr22.tripweather.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RouteTimelineTests {
+
+	private static final long START = 1_760_000_000L;
+
+	// Seven vertices 100 m apart
+	private static final double[] CUMULATIVE = {0, 100, 200, 300, 400, 500, 600};
+
+	@Test
+	void computesWaypointTimes() {
+		RouteTimeline timeline = RouteTimeline.compute(CUMULATIVE, new int[] {0, 3, 6},
+				new double[] {300.4, 600.6}, START, new long[] {0, 900, 0});
+
+		assertEquals(3, timeline.waypointCount());
+		assertEquals(START, timeline.arrival(0));
+		assertEquals(START, timeline.departure(0));
+		assertEquals(START + 300, timeline.arrival(1));
+		assertEquals(START + 1200, timeline.departure(1));
+		assertEquals(START + 1801, timeline.arrival(2));
+		assertEquals(START + 1801, timeline.departure(2));
+	}
+
+	@Test
+	void spreadsLegTimeOverVerticesByDistance() {
+		RouteTimeline timeline = RouteTimeline.compute(CUMULATIVE, new int[] {0, 3, 6},
+				new double[] {300.4, 600.6}, START, new long[] {0, 900});
+
+		// The intermediate waypoint's vertex gets its departure time, the destination its arrival
+		long[] expected = {0, 100, 200, 1200, 1400, 1600, 1801};
+		assertEquals(CUMULATIVE.length, timeline.vertexCount());
+		for (int v = 0; v < expected.length; v++) {
+			assertEquals(START + expected[v], timeline.timeAt(v), "vertex " + v);
+		}
+
+		long[] copy = timeline.vertexTimes();
+		copy[0] = 0;
+		assertEquals(START, timeline.timeAt(0));
+	}
+
+	@Test
+	void startsAfterTimeAtFirstWaypoint() {
+		RouteTimeline timeline = RouteTimeline.compute(CUMULATIVE, new int[] {0, 6},
+				new double[] {600}, START, new long[] {1800});
+
+		assertEquals(START, timeline.arrival(0));
+		assertEquals(START + 1800, timeline.departure(0));
+		assertEquals(START + 1800, timeline.timeAt(0));
+		assertEquals(START + 2100, timeline.timeAt(3));
+		assertEquals(START + 2400, timeline.arrival(1));
+	}
+
+	@Test
+	void rejectsWrongBoundaryCount() {
+		assertThrows(IllegalArgumentException.class, () -> RouteTimeline.compute(CUMULATIVE,
+				new int[] {0, 6}, new double[] {300, 300}, START, new long[0]));
+	}
+
+	@Test
+	void placesBoundariesByDistance() {
+		// Target 240 m is closer to the vertex at 200 m than the one at 300 m
+		assertArrayEquals(new int[] {0, 2, 6}, RouteTimeline.boundariesByDistance(CUMULATIVE, new double[] {240, 360}));
+		// Leg distances are scaled to the geometry's length
+		assertArrayEquals(new int[] {0, 2, 6}, RouteTimeline.boundariesByDistance(CUMULATIVE, new double[] {480, 720}));
+		assertArrayEquals(new int[] {0, 3, 6}, RouteTimeline.boundariesByDistance(CUMULATIVE, new double[] {290, 310}));
+		// Without leg distances the waypoints are spread evenly
+		assertArrayEquals(new int[] {0, 2, 4, 6}, RouteTimeline.boundariesByDistance(CUMULATIVE, new double[3]));
+		assertArrayEquals(new int[] {0, 6}, RouteTimeline.boundariesByDistance(CUMULATIVE, new double[] {600}));
+	}
+
+	@Test
+	void keepsBoundariesInOrder() {
+		int[] boundaries = RouteTimeline.boundariesByDistance(CUMULATIVE, new double[] {0, 0, 600});
+		for (int k = 1; k < boundaries.length; k++) {
+			assertTrue(boundaries[k] >= boundaries[k - 1], Arrays.toString(boundaries));
+		}
+		assertEquals(6, boundaries[boundaries.length - 1]);
+	}
+
+	@Test
+	void convertsWayPoints() {
+		assertArrayEquals(new int[] {0, 3, 6}, RouteTimeline.boundariesFromWayPoints(List.of(0, 3, 6), 2, 7));
+		assertNull(RouteTimeline.boundariesFromWayPoints(List.of(0, 6), 2, 7));
+		assertNull(RouteTimeline.boundariesFromWayPoints(List.of(0, 4, 3), 2, 7));
+		assertNull(RouteTimeline.boundariesFromWayPoints(List.of(0, 3, 7), 2, 7));
+		assertNull(RouteTimeline.boundariesFromWayPoints(null, 2, 7));
+	}
+}
@@ -0,0 +1,124 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.pjr22.tripweather.model.DepartureOption;
+import com.pjr22.tripweather.model.ForecastDictionary;
+import com.pjr22.tripweather.model.ForecastIndex;
+import com.pjr22.tripweather.model.RouteData;
+import com.pjr22.tripweather.model.RouteGeometry;
+
+class DepartureWindowServiceTests {
+
+	/**
+	 * About 100 km east along the equator, driven in an hour from 2025-10-16 08:00 UTC
+	 */
+	private static RouteData route() {
+		RouteGeometry geometry = RouteGeometry.builder(2, false).add(0.0, 0.0, 0).add(0.9, 0.0, 0).build();
+		double distance = geometry.cumulativeDistances()[1];
+		RouteData route = new RouteData(geometry, distance, 3600.0);
+		RouteData.RouteSegment segment = new RouteData.RouteSegment();
+		segment.setDistance(distance);
+		segment.setDuration(3600.0);
+		route.setSegments(List.of(segment));
+		RouteData.WaypointCoordinates start = new RouteData.WaypointCoordinates(List.of(0.0, 0.0), "Start");
+		start.setArrivalTime("2025-10-16 08:00");
+		start.setTimezone("UTC");
+		RouteData.WaypointCoordinates end = new RouteData.WaypointCoordinates(List.of(0.9, 0.0), "End");
+		end.setTimezone("UTC");
+		route.setWaypoints(List.of(start, end));
+		return route;
+	}
+
+	/**
+	 * Hourly forecast from 08:00 to 13:00 UTC: snow until 10:00, then clear
+	 */
+	private static ForecastIndex forecast() throws IOException {
+		List<String> periods = new ArrayList<>();
+		for (int hour = 8; hour < 13; hour++) {
+			boolean snow = hour < 10;
+			periods.add(String.format("""
+					{"startTime": "2025-10-16T%02d:00:00+00:00", "endTime": "2025-10-16T%02d:00:00+00:00",
+					 "temperature": {"value": 30}, "temperatureUnit": "F", "windSpeed": "10 mph",
+					 "windDirection": "S", "shortForecast": "%s", "probabilityOfPrecipitation": {"value": %d}}""",
+					hour, hour + 1, snow ? "Snow" : "Sunny", snow ? 80 : 0));
+		}
+		String json = "{\"properties\": {\"periods\": [" + String.join(",", periods) + "]}}";
+		try (JsonParser parser = new JsonFactory().createParser(json)) {
+			return ForecastIndex.read(parser, new ForecastDictionary(), 168);
+		}
+	}
+
+	@Test
+	void ranksDeparturesByTheWeatherAlongTheRoute() throws IOException {
+		ForecastIndex forecast = forecast();
+		WeatherService weatherService = mock(WeatherService.class);
+		when(weatherService.getForecasts(any(), any())).thenAnswer(invocation -> {
+			ForecastIndex[] forecasts = new ForecastIndex[invocation.<double[]>getArgument(0).length];
+			Arrays.fill(forecasts, forecast);
+			return forecasts;
+		});
+		DepartureWindowService service = new DepartureWindowService(new RouteWeatherService(weatherService, 25, 400),
+				weatherService, 48, 30, 500, 10);
+
+		// Leaving at 08:00 through 12:00, every hour
+		List<DepartureOption> options = service.rankDepartures(route(), 4, 60, 25.0, null);
+
+		assertEquals(5, options.size());
+		// Clear the whole way, earliest first
+		assertEquals("2025-10-16 10:00", options.get(0).getDepartureTime());
+		assertEquals("2025-10-16 11:00", options.get(0).getArrivalTime());
+		assertEquals(Instant.parse("2025-10-16T10:00:00Z").toString(), options.get(0).getDeparture());
+		assertEquals(0.0, options.get(0).getScore());
+		assertEquals(0, options.get(0).getMaxPrecipitationProbability());
+		assertEquals("2025-10-16 11:00", options.get(1).getDepartureTime());
+		// Snow ends as this one arrives
+		assertEquals("2025-10-16 09:00", options.get(2).getDepartureTime());
+		assertEquals("Snow", options.get(2).getWorstCondition());
+		assertEquals("2025-10-16 08:00", options.get(3).getDepartureTime());
+		assertEquals(80, options.get(3).getMaxPrecipitationProbability());
+		// Arrives after the forecast ends, so it comes last whatever its score
+		assertEquals("2025-10-16 12:00", options.get(4).getDepartureTime());
+		assertEquals(1, options.get(4).getSamplesWithoutForecast());
+		for (int i = 0; i < options.size(); i++) {
+			assertEquals(i + 1, options.get(i).getRank());
+		}
+
+		// One forecast lookup covers every candidate
+		verify(weatherService).getForecasts(any(), any());
+	}
+
+	@Test
+	void leavesOptionsUnscoredBeyondTheForecast() {
+		WeatherService weatherService = mock(WeatherService.class);
+		when(weatherService.getForecasts(any(), any()))
+				.thenAnswer(invocation -> new ForecastIndex[invocation.<double[]>getArgument(0).length]);
+		DepartureWindowService service = new DepartureWindowService(new RouteWeatherService(weatherService, 25, 400),
+				weatherService, 48, 30, 500, 10);
+
+		List<DepartureOption> options = service.rankDepartures(route(), 1, null, null, 3);
+
+		// 30 minute steps over an hour, in departure order since none can be scored
+		assertEquals(3, options.size());
+		assertEquals("2025-10-16 08:00", options.get(0).getDepartureTime());
+		assertEquals("2025-10-16 08:30", options.get(1).getDepartureTime());
+		assertNull(options.get(0).getScore());
+		assertNull(options.get(0).getMaxPrecipitationProbability());
+		assertNull(options.get(0).getWorstCondition());
+	}
+}
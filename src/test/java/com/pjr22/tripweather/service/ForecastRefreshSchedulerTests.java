@@ -0,0 +1,92 @@
+package com.pjr22.tripweather.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ForecastRefreshSchedulerTests {
+
+	private static final String HOT = "https://api.weather.gov/gridpoints/BOU/62,60/forecast/hourly";
+	private static final String COLD = "https://api.weather.gov/gridpoints/BOU/50,71/forecast/hourly";
+
+	private WeatherService weatherService;
+	private ForecastRefreshScheduler scheduler;
+
+	@BeforeEach
+	void createScheduler() {
+		weatherService = mock(WeatherService.class);
+		when(weatherService.isUpstreamAvailable()).thenReturn(true);
+		when(weatherService.drainForecastAccessCounts()).thenReturn(Map.of());
+		when(weatherService.getForecastsExpiringWithin(any())).thenReturn(List.of(HOT, COLD));
+		scheduler = new ForecastRefreshScheduler(weatherService, true, 180, 3, 1);
+	}
+
+	@AfterEach
+	void stopScheduler() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	void refreshesOnlyPopularForecastsAboutToExpire() {
+		when(weatherService.getForecastsExpiringWithin(any()))
+				.thenReturn(List.of(HOT, COLD, "https://api.weather.gov/gridpoints/BOU/1,1/forecast/hourly"));
+		when(weatherService.drainForecastAccessCounts()).thenReturn(Map.of(HOT, 5L, COLD, 2L));
+
+		scheduler.refreshHotForecasts();
+
+		verify(weatherService, timeout(2000)).refreshForecast(HOT);
+		verify(weatherService, after(200).never()).refreshForecast(COLD);
+		verify(weatherService, never()).refreshForecast("https://api.weather.gov/gridpoints/BOU/1,1/forecast/hourly");
+	}
+
+	@Test
+	void halvesPopularityEveryRun() {
+		when(weatherService.drainForecastAccessCounts()).thenReturn(Map.of(HOT, 4L), Map.of(), Map.of(HOT, 2L));
+		when(weatherService.getForecastsExpiringWithin(any())).thenReturn(List.of(), List.of(HOT), List.of(HOT));
+
+		// 4 lookups make the forecast hot, but not expiring yet
+		scheduler.refreshHotForecasts();
+		// By the next run with no lookups the score has dropped to 2, below the minimum of 3
+		scheduler.refreshHotForecasts();
+		verify(weatherService, after(200).never()).refreshForecast(anyString());
+
+		// Two more lookups take it back to 1 + 2
+		scheduler.refreshHotForecasts();
+		verify(weatherService, timeout(2000)).refreshForecast(HOT);
+	}
+
+	@Test
+	void waitsWhileUsersAreWaitingOnWeatherGov() {
+		when(weatherService.drainForecastAccessCounts()).thenReturn(Map.of(HOT, 10L));
+		when(weatherService.getInteractiveFetchesInFlight()).thenReturn(1);
+
+		scheduler.refreshHotForecasts();
+
+		verify(weatherService, never()).getForecastsExpiringWithin(any());
+		verify(weatherService, after(200).never()).refreshForecast(anyString());
+	}
+
+	@Test
+	void pausesWhileWeatherGovIsUnavailable() {
+		when(weatherService.drainForecastAccessCounts()).thenReturn(Map.of(HOT, 10L));
+		when(weatherService.isUpstreamAvailable()).thenReturn(false);
+
+		scheduler.refreshHotForecasts();
+
+		// Lookups are still counted while paused
+		verify(weatherService).drainForecastAccessCounts();
+		verify(weatherService, after(200).never()).refreshForecast(anyString());
+	}
+}
@@ -0,0 +1,70 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HgtElevationServiceTests {
+
+	private static final int SAMPLES = 1201;
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Write a 3 arc second tile whose elevation is row * 10 + column, or void where asked
+	 */
+	private void writeTile(String name, int voidRow, int voidColumn) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SAMPLES * SAMPLES * 2);
+		for (int row = 0; row < SAMPLES; row++) {
+			for (int column = 0; column < SAMPLES; column++) {
+				boolean isVoid = row == voidRow && column == voidColumn;
+				buffer.putShort((short) (isVoid ? Short.MIN_VALUE : row * 10 + column));
+			}
+		}
+		Files.write(directory.resolve(name), buffer.array());
+	}
+
+	@Test
+	void interpolatesBetweenSamples() throws IOException {
+		writeTile("N38W120.hgt", -1, -1);
+		HgtElevationService service = new HgtElevationService(directory.toString(), 4);
+
+		double step = 1.0 / (SAMPLES - 1);
+		// North-west corner is row 0, column 0
+		assertEquals(0.0, service.getElevation(39 - 1e-12, -120), 1e-6);
+		// Exactly on sample row 2, column 3
+		assertEquals(23.0, service.getElevation(39 - 2 * step, -120 + 3 * step), 1e-6);
+		// Halfway between rows 2 and 3 and columns 3 and 4
+		assertEquals(28.5, service.getElevation(39 - 2.5 * step, -120 + 3.5 * step), 1e-6);
+		// South-east corner
+		assertEquals(1200 * 11.0, service.getElevation(38, -119 - 1e-12), 1e-3);
+	}
+
+	@Test
+	void skipsVoidSamples() throws IOException {
+		writeTile("N38W120.hgt", 2, 3);
+		HgtElevationService service = new HgtElevationService(directory.toString(), 4);
+
+		double step = 1.0 / (SAMPLES - 1);
+		// Remaining samples are 24, 33 and 34 with equal weight
+		assertEquals((24 + 33 + 34) / 3.0, service.getElevation(39 - 2.5 * step, -120 + 3.5 * step), 1e-6);
+	}
+
+	@Test
+	void returnsNullWithoutTile() throws IOException {
+		writeTile("N38W120.hgt", -1, -1);
+		HgtElevationService service = new HgtElevationService(directory.toString(), 4);
+
+		assertNull(service.getElevation(40.5, -120.5));
+		assertNull(new HgtElevationService("", 4).getElevation(38.5, -119.5));
+		assertEquals(1, service.stats().misses());
+	}
+}
@@ -0,0 +1,141 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.pjr22.tripweather.model.LocationData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class LocationServiceTests {
+
+	private static final String RESPONSE = """
+			{"type": "FeatureCollection", "features": [{"type": "Feature",
+			 "properties": {"city": "Denver", "state_code": "CO", "address_line1": "99 West 12th Avenue"},
+			 "geometry": {"type": "Point", "coordinates": [-104.9903, 39.7392]}}],
+			 "query": {"lat": 39.7392, "lon": -104.9903}}""";
+
+	private HttpServer server;
+	private RouteService routeService;
+	private LocationService service;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final CountDownLatch geocodeStarted = new CountDownLatch(1);
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/geocode/reverse", this::reverse);
+		server.start();
+
+		String baseUrl = "http://localhost:" + server.getAddress().getPort();
+		// No ORS key, so there is no elevation and the result is cached with the short TTL
+		routeService = new RouteService("", baseUrl,
+				60, 500, 5, 5000, 4, new double[] { 5, 20, 80, 320, 1280 },
+				10080, 100000, 1, 2000,
+				1440, 20000, 4, 10, 10000, 500,
+				new InFlightRequestRegistry(), new HgtElevationService("", 4));
+		service = new LocationService("test-key", baseUrl, 3000, 5000, 2000, 1, 4, 8, 1440, 100, 10,
+				routeService, new InFlightRequestRegistry());
+	}
+
+	/**
+	 * A service that gets elevations from the given RouteService, stopped after the test
+	 */
+	private LocationService createService(RouteService elevations, long elevationTimeoutMs) {
+		service.shutdown();
+		service = new LocationService("test-key", "http://localhost:" + server.getAddress().getPort(), 3000, 5000,
+				elevationTimeoutMs, 1, 4, 8, 1440, 100, 10, elevations, new InFlightRequestRegistry());
+		return service;
+	}
+
+	@AfterEach
+	void stopServer() {
+		service.shutdown();
+		routeService.shutdown();
+		server.stop(0);
+	}
+
+	private void reverse(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		geocodeStarted.countDown();
+		byte[] response = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, response.length);
+		exchange.getResponseBody().write(response);
+		exchange.close();
+	}
+
+	@Test
+	void handsOutACopyOfTheCachedLocation() {
+		LocationData first = service.reverseGeocode(39.7392, -104.9903);
+		assertEquals("Denver", first.getFeatures().get(0).getProperties().getCity());
+		first.getFeatures().get(0).getProperties().setCity("Changed");
+		first.getFeatures().get(0).getGeometry().getCoordinates().add(1609.0);
+
+		// A nearby point in the same cell is served from the cache, unchanged
+		LocationData second = service.reverseGeocode(39.73921, -104.99031);
+		assertEquals(1, requests.get());
+		assertNotSame(first, second);
+		LocationData.Feature feature = second.getFeatures().get(0);
+		assertEquals("Denver", feature.getProperties().getCity());
+		assertEquals("CO", feature.getProperties().getStateCode());
+		assertEquals(List.of(-104.9903, 39.7392), feature.getGeometry().getCoordinates());
+		assertEquals(39.7392, second.getQuery().getLat(), 0.0);
+	}
+
+	@Test
+	void looksUpTheElevationAlongsideTheLocation() {
+		RouteService elevations = mock(RouteService.class);
+		// Only answers once the geocode request is under way, so the two must run together
+		when(elevations.getElevation(39.7392, -104.9903))
+				.thenAnswer(invocation -> geocodeStarted.await(2, TimeUnit.SECONDS) ? 1609.0 : null);
+
+		LocationData location = createService(elevations, 5000).reverseGeocode(39.7392, -104.9903);
+
+		assertEquals(List.of(-104.9903, 39.7392, 1609.0),
+				location.getFeatures().get(0).getGeometry().getCoordinates());
+	}
+
+	@Test
+	void answersWithoutTheElevationWhenItIsSlow() {
+		RouteService elevations = mock(RouteService.class);
+		when(elevations.getElevation(39.7392, -104.9903)).thenAnswer(invocation -> {
+			Thread.sleep(2000);
+			return 1609.0;
+		});
+
+		long start = System.nanoTime();
+		LocationData location = createService(elevations, 100).reverseGeocode(39.7392, -104.9903);
+
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+		assertEquals("Denver", location.getFeatures().get(0).getProperties().getCity());
+		assertEquals(List.of(-104.9903, 39.7392), location.getFeatures().get(0).getGeometry().getCoordinates());
+	}
+
+	@Test
+	void answersWithoutTheElevationWhenItFails() {
+		RouteService elevations = mock(RouteService.class);
+		when(elevations.getElevation(39.7392, -104.9903)).thenThrow(new IllegalStateException("ORS is down"));
+
+		LocationData location = createService(elevations, 5000).reverseGeocode(39.7392, -104.9903);
+
+		assertEquals("Denver", location.getFeatures().get(0).getProperties().getCity());
+		assertEquals(List.of(-104.9903, 39.7392), location.getFeatures().get(0).getGeometry().getCoordinates());
+	}
+}
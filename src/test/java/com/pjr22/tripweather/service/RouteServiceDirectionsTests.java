@@ -0,0 +1,309 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pjr22.tripweather.Utils;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.pjr22.tripweather.model.RouteData;
+import com.pjr22.tripweather.model.RouteGeometry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class RouteServiceDirectionsTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ZoneId ZONE = ZoneId.of("America/Denver");
+
+	private HttpServer server;
+	private RouteService service;
+	// Waypoint coordinates sent in each directions request, in order
+	private final List<List<List<Double>>> requests = new ArrayList<>();
+	// Whether the route for the requested coordinates comes back with elevations
+	private volatile Predicate<List<List<Double>>> withElevation = coordinates -> true;
+	// Sent as is instead of the generated route, if set
+	private volatile byte[] fixedResponse;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/v2/directions/driving-car/geojson", this::directions);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		if (service != null) {
+			service.shutdown();
+		}
+		server.stop(0);
+	}
+
+	/**
+	 * Answer like ORS with a route that runs straight through each waypoint and has one
+	 * extra vertex halfway along every leg, so waypoint k is vertex 2k
+	 */
+	private void directions(HttpExchange exchange) throws IOException {
+		JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+		List<List<Double>> coordinates = new ArrayList<>();
+		for (JsonNode coordinate : body.get("coordinates")) {
+			coordinates.add(List.of(coordinate.get(0).asDouble(), coordinate.get(1).asDouble()));
+		}
+		synchronized (requests) {
+			requests.add(coordinates);
+		}
+		if (fixedResponse != null) {
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, fixedResponse.length);
+			exchange.getResponseBody().write(fixedResponse);
+			exchange.close();
+			return;
+		}
+		boolean elevation = withElevation.test(coordinates);
+
+		ObjectNode feature = MAPPER.createObjectNode().put("type", "Feature");
+		ObjectNode properties = feature.putObject("properties");
+		ArrayNode segments = properties.putArray("segments");
+		ArrayNode wayPoints = properties.putArray("way_points");
+		ArrayNode vertices = MAPPER.createArrayNode();
+		double totalDistance = 0;
+		for (int k = 0; k < coordinates.size(); k++) {
+			List<Double> point = coordinates.get(k);
+			if (k > 0) {
+				List<Double> previous = coordinates.get(k - 1);
+				addVertex(vertices, (previous.get(0) + point.get(0)) / 2, (previous.get(1) + point.get(1)) / 2,
+						elevation);
+				double distance = RouteGeometry.distanceMeters(previous.get(1), previous.get(0), point.get(1),
+						point.get(0));
+				segments.addObject().put("distance", distance).put("duration", distance / 20)
+						.putArray("steps").addObject().put("instruction", "Continue");
+				totalDistance += distance;
+			}
+			wayPoints.add(vertices.size());
+			addVertex(vertices, point.get(0), point.get(1), elevation);
+		}
+		properties.putObject("summary").put("distance", totalDistance).put("duration", totalDistance / 20);
+		ObjectNode geometry = feature.putObject("geometry");
+		geometry.set("coordinates", vertices);
+		geometry.put("type", "LineString");
+
+		ObjectNode response = MAPPER.createObjectNode().put("type", "FeatureCollection");
+		response.putArray("features").add(feature);
+		response.putObject("metadata").put("service", "routing");
+		byte[] bytes = MAPPER.writeValueAsBytes(response);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	private static void addVertex(ArrayNode vertices, double longitude, double latitude, boolean elevation) {
+		ArrayNode vertex = vertices.addArray().add(longitude).add(latitude);
+		if (elevation) {
+			vertex.add(1500.0 + vertices.size());
+		}
+	}
+
+	private RouteService createService(int maxLegRequests) {
+		service = new RouteService("test-key", "http://localhost:" + server.getAddress().getPort(),
+				60, 500, 5, 5000, maxLegRequests, new double[] { 5, 20, 80, 320, 1280 },
+				10080, 100000, 1, 2000,
+				1440, 20000, 4, 10, 10000, 500,
+				new InFlightRequestRegistry(), new HgtElevationService("", 4));
+		return service;
+	}
+
+	/**
+	 * Waypoints on a line heading east, one per longitude given
+	 */
+	private static List<RouteService.RouteRequest.Waypoint> waypoints(double... longitudes) {
+		List<RouteService.RouteRequest.Waypoint> waypoints = new ArrayList<>();
+		for (double longitude : longitudes) {
+			waypoints.add(new RouteService.RouteRequest.Waypoint(39.7, longitude, "W" + longitude, ZONE.getId()));
+		}
+		return waypoints;
+	}
+
+	private RouteData route(RouteService routeService, double... longitudes) {
+		return routeService.calculateRoute(waypoints(longitudes), ZonedDateTime.now(ZONE).plusHours(1), null);
+	}
+
+	private static LocalDateTime lastArrivalTime(RouteData route) {
+		return LocalDateTime.parse(route.getWaypoints().get(route.getWaypoints().size() - 1).getArrivalTime(),
+				Utils.date_time_formatter);
+	}
+
+	private static List<Double> requestedLongitudes(List<List<Double>> coordinates) {
+		return coordinates.stream().map(coordinate -> coordinate.get(0)).toList();
+	}
+
+	@Test
+	void fetchesOnlyTheLegsThatChanged() {
+		RouteService routeService = createService(4);
+
+		RouteData first = route(routeService, -105.0, -104.9, -104.8);
+		assertEquals(5, first.getGeometry().size());
+		assertEquals(2, requests.size());
+
+		// Extending the route only asks for the new leg
+		RouteData extended = route(routeService, -105.0, -104.9, -104.8, -104.7);
+		assertEquals(7, extended.getGeometry().size());
+		assertEquals(3, requests.size());
+		assertEquals(List.of(-104.8, -104.7), requestedLongitudes(requests.get(2)));
+		assertEquals(3, extended.getSegments().size());
+		assertEquals(-104.7, extended.getGeometry().longitude(6), 1e-9);
+		assertEquals(-104.75, extended.getGeometry().longitude(5), 1e-9);
+		double legs = extended.getSegments().stream().mapToDouble(RouteData.RouteSegment::getDistance).sum();
+		assertEquals(legs, extended.getDistance(), 1e-6);
+	}
+
+	@Test
+	void splitsAWholeRouteIntoReusableLegs() {
+		RouteService routeService = createService(2);
+
+		// More legs are missing than may be requested separately, so the route comes in one request
+		RouteData whole = route(routeService, -105.0, -104.9, -104.8, -104.7);
+		assertEquals(1, requests.size());
+		assertEquals(7, whole.getGeometry().size());
+
+		// Every leg of the middle part is now cached on its own
+		RouteData middle = route(routeService, -104.9, -104.8, -104.7);
+		assertEquals(1, requests.size());
+		assertEquals(5, middle.getGeometry().size());
+		for (int i = 0; i < middle.getGeometry().size(); i++) {
+			assertEquals(whole.getGeometry().longitude(i + 2), middle.getGeometry().longitude(i), 0.0);
+			assertEquals(whole.getGeometry().elevation(i + 2), middle.getGeometry().elevation(i), 0.0);
+		}
+	}
+
+	@Test
+	void refetchesCachedLegsThatHaveNoElevation() {
+		RouteService routeService = createService(4);
+
+		withElevation = coordinates -> false;
+		assertFalse(route(routeService, -105.0, -104.9).getGeometry().hasElevation());
+
+		withElevation = coordinates -> true;
+		RouteGeometry geometry = route(routeService, -105.0, -104.9, -104.8).getGeometry();
+		assertEquals(3, requests.size());
+		assertTrue(geometry.hasElevation());
+		for (int i = 0; i < geometry.size(); i++) {
+			assertFalse(Double.isNaN(geometry.elevation(i)), "vertex " + i);
+		}
+	}
+
+	@Test
+	void keepsElevationOfLegsThatHaveIt() {
+		RouteService routeService = createService(4);
+		// ORS has no elevation for the first leg only
+		withElevation = coordinates -> coordinates.get(0).get(0) != -105.0;
+
+		RouteGeometry geometry = route(routeService, -105.0, -104.9, -104.8).getGeometry();
+		assertEquals(5, geometry.size());
+		assertTrue(geometry.hasElevation());
+		assertTrue(Double.isNaN(geometry.elevation(0)));
+		assertTrue(Double.isNaN(geometry.elevation(1)));
+		assertFalse(Double.isNaN(geometry.elevation(3)));
+		assertFalse(Double.isNaN(geometry.elevation(4)));
+	}
+
+	@Test
+	void reusesDirectionsForTheSameWaypointsAtAnyTime() {
+		RouteService routeService = createService(4);
+		ZonedDateTime departure = ZonedDateTime.now(ZONE).plusHours(1).withSecond(0).withNano(0);
+
+		RouteData first = routeService.calculateRoute(waypoints(-105.0, -104.9), departure, null);
+		// Coordinates are compared at five decimal places, and timing is not part of the key
+		RouteData later = routeService.calculateRoute(waypoints(-105.000001, -104.9), departure.plusHours(3),
+				List.of(0, 0));
+		assertEquals(1, requests.size());
+
+		assertEquals(first.getDistance(), later.getDistance());
+		assertEquals(first.getGeometry().size(), later.getGeometry().size());
+		assertEquals(lastArrivalTime(first).plusHours(3), lastArrivalTime(later));
+
+		route(routeService, -105.0, -104.8);
+		assertEquals(2, requests.size());
+	}
+
+	@Test
+	void readsARecordedOrsResponse() throws IOException {
+		fixedResponse = Files.readAllBytes(Path.of("directions_response_example.json"));
+		RouteService routeService = createService(4);
+
+		RouteData route = routeService.calculateRoute(List.of(
+				new RouteService.RouteRequest.Waypoint(39.617431, -104.90082, "Start", ZONE.getId()),
+				new RouteService.RouteRequest.Waypoint(39.518883, -104.76402, "End", ZONE.getId())),
+				ZonedDateTime.now(ZONE).plusHours(1), null);
+
+		assertEquals(21646.3, route.getDistance(), 0.0);
+		assertEquals(1201.3, route.getDuration(), 0.0);
+		assertEquals(1, route.getSegments().size());
+		assertEquals(21646.3, route.getSegments().get(0).getDistance(), 0.0);
+		RouteGeometry geometry = route.getGeometry();
+		assertEquals(224, geometry.size());
+		assertFalse(geometry.hasElevation());
+		assertEquals(-104.900815, geometry.longitude(0), 0.0);
+		assertEquals(39.617431, geometry.latitude(0), 0.0);
+		assertEquals(-104.764065, geometry.longitude(223), 0.0);
+		assertEquals(39.518722, geometry.latitude(223), 0.0);
+	}
+
+	@Test
+	void readsOnlyTheFieldsItNeeds() {
+		// Unknown fields, nested steps and a second feature are skipped without being parsed into a tree
+		fixedResponse = """
+				{"type": "FeatureCollection", "bbox": [-105.1, 39.0, -105.0, 39.1],
+				 "features": [
+				  {"bbox": [-105.1, 39.0, -105.0, 39.1], "type": "Feature",
+				   "properties": {"warnings": [{"code": 1, "message": "toll road"}],
+				    "segments": [{"distance": 10.5, "duration": 2.5,
+				      "steps": [{"distance": 10.5, "duration": 2.5, "instruction": "Head north", "way_points": [0, 2]}]},
+				     {"distance": 20.0, "duration": 4.0, "steps": []}],
+				    "extras": {"surface": {"values": [[0, 4, 1]]}},
+				    "way_points": [0, 2, 4],
+				    "summary": {"distance": 30.5, "duration": 6.5}},
+				   "geometry": {"coordinates": [[-105.0, 39.0, 1600], [-105.01, 39.01, 1601], [-105.02, 39.02, 1602],
+				     [-105.03, 39.03, 1603], [-105.04, 39.04, 1604]], "type": "LineString"}},
+				  {"type": "Feature", "properties": {"summary": {"distance": 1, "duration": 1}},
+				   "geometry": {"coordinates": [[0, 0], [1, 1]], "type": "LineString"}}],
+				 "metadata": {"query": {"coordinates": [[-105.0, 39.0], [-105.02, 39.02], [-105.04, 39.04]]}}}
+				""".getBytes(StandardCharsets.UTF_8);
+		RouteService routeService = createService(1);
+
+		RouteData route = routeService.calculateRoute(List.of(
+				new RouteService.RouteRequest.Waypoint(39.0, -105.0, "A", ZONE.getId()),
+				new RouteService.RouteRequest.Waypoint(39.02, -105.02, "B", ZONE.getId()),
+				new RouteService.RouteRequest.Waypoint(39.04, -105.04, "C", ZONE.getId())),
+				ZonedDateTime.now(ZONE).plusHours(1), null);
+
+		assertEquals(30.5, route.getDistance(), 0.0);
+		assertEquals(6.5, route.getDuration(), 0.0);
+		assertEquals(List.of(10.5, 20.0),
+				route.getSegments().stream().map(RouteData.RouteSegment::getDistance).toList());
+		assertEquals(5, route.getGeometry().size());
+		assertEquals(1602.0, route.getGeometry().elevation(2), 0.0);
+		assertEquals(-105.04, route.getGeometry().longitude(4), 0.0);
+	}
+}
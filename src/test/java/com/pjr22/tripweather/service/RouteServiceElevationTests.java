@@ -0,0 +1,150 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class RouteServiceElevationTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private HttpServer server;
+	private RouteService service;
+	// Number of points in each line request, in order
+	private final List<Integer> lineRequests = new ArrayList<>();
+	private final List<String> pointRequests = new ArrayList<>();
+	private final AtomicBoolean failRequests = new AtomicBoolean();
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/elevation/line", this::line);
+		server.createContext("/elevation/point", this::point);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		if (service != null) {
+			service.shutdown();
+		}
+		server.stop(0);
+	}
+
+	/**
+	 * Elevation the fake service reports for a point, rising a meter per 0.001 degrees north
+	 */
+	private static double elevation(double latitude) {
+		return Math.round(latitude * 1000) - 38000;
+	}
+
+	private void line(HttpExchange exchange) throws IOException {
+		JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+		ArrayNode vertices = MAPPER.createArrayNode();
+		for (JsonNode coordinate : body.get("geometry")) {
+			double latitude = coordinate.get(1).asDouble();
+			vertices.addArray().add(coordinate.get(0).asDouble()).add(latitude).add(elevation(latitude));
+		}
+		synchronized (lineRequests) {
+			lineRequests.add(vertices.size());
+		}
+		respond(exchange, MAPPER.createObjectNode().put("type", "LineString").set("geometry", vertices));
+	}
+
+	private void point(HttpExchange exchange) throws IOException {
+		String[] geometry = exchange.getRequestURI().getQuery().substring("geometry=".length()).split(",");
+		synchronized (pointRequests) {
+			pointRequests.add(exchange.getRequestURI().getQuery());
+		}
+		double latitude = Double.parseDouble(geometry[1]);
+		ObjectNode feature = MAPPER.createObjectNode().put("type", "Feature");
+		feature.putObject("geometry").put("type", "Point").putArray("coordinates")
+				.add(Double.parseDouble(geometry[0])).add(latitude).add(elevation(latitude));
+		respond(exchange, feature);
+	}
+
+	private void respond(HttpExchange exchange, JsonNode response) throws IOException {
+		if (failRequests.get()) {
+			exchange.sendResponseHeaders(500, -1);
+			exchange.close();
+			return;
+		}
+		byte[] bytes = MAPPER.writeValueAsBytes(response);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	private RouteService createService(int maxElevationPoints) {
+		service = new RouteService("test-key", "http://localhost:" + server.getAddress().getPort(),
+				60, 500, 5, 5000, 4, new double[] { 5, 20, 80, 320, 1280 },
+				10080, 100000, 1, maxElevationPoints,
+				1440, 20000, 4, 10, 10000, 500,
+				new InFlightRequestRegistry(), new HgtElevationService("", 4));
+		return service;
+	}
+
+	@Test
+	void looksUpEachGridCellOnceInBatches() {
+		RouteService routeService = createService(3);
+		// The second point is a few meters from the first, in the same one arc second cell
+		double[] latitudes = { 39.7001, 39.70011, 39.702, 39.703, 39.704, 39.705, 39.706 };
+		double[] longitudes = { -105.0001, -105.00011, -105.0, -105.0, -105.0, -105.0, -105.0 };
+
+		Double[] elevations = routeService.getElevations(latitudes, longitudes);
+		assertArrayEquals(new Double[] { 1700.0, 1700.0, 1702.0, 1703.0, 1704.0, 1705.0, 1706.0 }, elevations);
+		assertEquals(List.of(3, 3), lineRequests);
+
+		// Every cell is cached now
+		assertArrayEquals(elevations, routeService.getElevations(latitudes, longitudes));
+		assertEquals(2, lineRequests.size());
+		assertEquals(1706.0, routeService.getElevation(39.706, -105.0));
+		assertEquals(0, pointRequests.size());
+	}
+
+	@Test
+	void usesThePointEndpointForASinglePoint() {
+		RouteService routeService = createService(3);
+		double[] latitudes = { 39.7, 39.705, 39.71, 39.715 };
+		double[] longitudes = { -105.0, -105.0, -105.0, -105.0 };
+
+		// Three full batches and one point left over
+		routeService.getElevations(latitudes, longitudes);
+		assertEquals(List.of(3), lineRequests);
+		assertEquals(1, pointRequests.size());
+		assertEquals(1715.0, routeService.getElevation(39.715, -105.0));
+		assertEquals(1, pointRequests.size());
+	}
+
+	@Test
+	void doesNotCacheFailedLookups() {
+		RouteService routeService = createService(100);
+		double[] latitudes = { 39.7, 39.71 };
+		double[] longitudes = { -105.0, -105.0 };
+
+		failRequests.set(true);
+		assertArrayEquals(new Double[] { null, null }, routeService.getElevations(latitudes, longitudes));
+
+		failRequests.set(false);
+		assertArrayEquals(new Double[] { 1700.0, 1710.0 }, routeService.getElevations(latitudes, longitudes));
+		assertEquals(2, lineRequests.size());
+	}
+}
@@ -0,0 +1,162 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.pjr22.tripweather.model.LocationData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class RouteServiceSnapTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private HttpServer server;
+	private RouteService service;
+	// Locations sent in each snap request, in order
+	private final List<List<double[]>> requests = new ArrayList<>();
+	private final AtomicBoolean failRequests = new AtomicBoolean();
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/v2/snap/driving-car/geojson", this::snap);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		if (service != null) {
+			service.shutdown();
+		}
+		server.stop(0);
+	}
+
+	/**
+	 * Snap every location north of the equator 0.0001 degrees east; leave out the rest, as ORS does
+	 */
+	private void snap(HttpExchange exchange) throws IOException {
+		JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+		List<double[]> locations = new ArrayList<>();
+		ArrayNode features = MAPPER.createArrayNode();
+		for (JsonNode location : body.get("locations")) {
+			double longitude = location.get(0).asDouble();
+			double latitude = location.get(1).asDouble();
+			if (latitude > 0) {
+				ObjectNode feature = features.addObject().put("type", "Feature");
+				feature.putObject("properties").put("name", "Road " + locations.size())
+						.put("source_id", locations.size());
+				feature.putObject("geometry").put("type", "Point").putArray("coordinates")
+						.add(longitude + 0.0001).add(latitude);
+			}
+			locations.add(new double[] { longitude, latitude });
+		}
+		synchronized (requests) {
+			requests.add(locations);
+		}
+
+		byte[] response = failRequests.get() ? new byte[0]
+				: MAPPER.writeValueAsBytes(MAPPER.createObjectNode().put("type", "FeatureCollection")
+						.set("features", features));
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(failRequests.get() ? 500 : 200, response.length == 0 ? -1 : response.length);
+		if (response.length > 0) {
+			exchange.getResponseBody().write(response);
+		}
+		exchange.close();
+	}
+
+	private RouteService createService(long notSnappedTtlMinutes, int maxSnapLocations) {
+		service = new RouteService("test-key", "http://localhost:" + server.getAddress().getPort(),
+				60, 500, 5, 5000, 4, new double[] { 5, 20, 80, 320, 1280 },
+				10080, 100000, 1, 2000,
+				1440, 20000, 4, notSnappedTtlMinutes, 10000, maxSnapLocations,
+				new InFlightRequestRegistry(), new HgtElevationService("", 4));
+		return service;
+	}
+
+	private List<Integer> sourceIds(LocationData snapped) {
+		return snapped.getFeatures().stream().map(feature -> feature.getProperties().getSourceId()).toList();
+	}
+
+	@Test
+	void snapsEachCellOnceAndServesRepeatsFromCache() {
+		RouteService routeService = createService(10, 500);
+		// The first two points round to the same 4 decimal place cell
+		double[] latitudes = { 49.41302, 49.41298, 49.5 };
+		double[] longitudes = { 8.66962, 8.66958, 8.7 };
+
+		LocationData snapped = routeService.snapToLocations(latitudes, longitudes);
+		assertEquals(List.of(0, 1, 2), sourceIds(snapped));
+		assertEquals(1, requests.size());
+		assertEquals(2, requests.get(0).size());
+		// Both points in the cell share the result for the first of them
+		List<Double> first = snapped.getFeatures().get(0).getGeometry().getCoordinates();
+		assertEquals(8.66972, first.get(0), 1e-9);
+		assertEquals(49.41302, first.get(1), 1e-9);
+		assertEquals(first, snapped.getFeatures().get(1).getGeometry().getCoordinates());
+
+		LocationData again = routeService.snapToLocations(latitudes, longitudes);
+		assertEquals(List.of(0, 1, 2), sourceIds(again));
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	void splitsUncachedPointsIntoBatches() {
+		RouteService routeService = createService(10, 2);
+		double[] latitudes = { 40.1, 40.2, 40.3, 40.4, 40.5 };
+		double[] longitudes = { -105.1, -105.2, -105.3, -105.4, -105.5 };
+
+		LocationData snapped = routeService.snapToLocations(latitudes, longitudes);
+		assertEquals(List.of(0, 1, 2, 3, 4), sourceIds(snapped));
+		assertEquals(List.of(2, 2, 1), requests.stream().map(List::size).toList());
+
+		// Only the point not seen before is sent upstream
+		routeService.snapToLocations(new double[] { 40.3, 40.6 }, new double[] { -105.3, -105.6 });
+		assertEquals(4, requests.size());
+		assertEquals(1, requests.get(3).size());
+		assertEquals(40.6, requests.get(3).get(0)[1], 1e-9);
+	}
+
+	@Test
+	void retriesUnsnappedPointsOnceTheirShortTtlHasPassed() {
+		// A zero TTL means points ORS did not snap are not cached at all
+		RouteService routeService = createService(0, 500);
+		double[] latitudes = { 40.1, -40.1 };
+		double[] longitudes = { -105.1, -105.1 };
+
+		assertEquals(List.of(0), sourceIds(routeService.snapToLocations(latitudes, longitudes)));
+		assertEquals(List.of(0), sourceIds(routeService.snapToLocations(latitudes, longitudes)));
+		assertEquals(2, requests.size());
+		assertEquals(1, requests.get(1).size());
+		assertEquals(-40.1, requests.get(1).get(0)[1], 1e-9);
+	}
+
+	@Test
+	void doesNotCacheFailedRequests() {
+		RouteService routeService = createService(10, 500);
+		double[] latitudes = { 40.1 };
+		double[] longitudes = { -105.1 };
+
+		failRequests.set(true);
+		assertEquals(List.of(), sourceIds(routeService.snapToLocations(latitudes, longitudes)));
+
+		failRequests.set(false);
+		assertEquals(List.of(0), sourceIds(routeService.snapToLocations(latitudes, longitudes)));
+		assertEquals(2, requests.size());
+	}
+}
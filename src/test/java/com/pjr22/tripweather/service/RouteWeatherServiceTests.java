@@ -0,0 +1,126 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pjr22.tripweather.model.RouteData;
+import com.pjr22.tripweather.model.RouteGeometry;
+import com.pjr22.tripweather.model.RouteWeatherSample;
+import com.pjr22.tripweather.model.WeatherData;
+
+class RouteWeatherServiceTests {
+
+	// 2025-10-16 08:00 UTC, when the route below starts
+	private static final long START = Instant.parse("2025-10-16T08:00:00Z").getEpochSecond();
+
+	/**
+	 * About 100 km east along the equator with unevenly spaced vertices, driven in an hour,
+	 * as the client posts it back: without a timeline, with the start time on the first waypoint
+	 */
+	private static RouteData route() {
+		RouteGeometry geometry = RouteGeometry.builder(3, false)
+				.add(0.0, 0.0, 0).add(0.3, 0.0, 0).add(0.9, 0.0, 0).build();
+		double distance = geometry.cumulativeDistances()[2];
+		RouteData route = new RouteData(geometry, distance, 3600.0);
+		RouteData.RouteSegment segment = new RouteData.RouteSegment();
+		segment.setDistance(distance);
+		segment.setDuration(3600.0);
+		route.setSegments(List.of(segment));
+		RouteData.WaypointCoordinates start = new RouteData.WaypointCoordinates(List.of(0.0, 0.0), "Start");
+		start.setArrivalTime("2025-10-16 08:00");
+		start.setTimezone("UTC");
+		route.setWaypoints(List.of(start, new RouteData.WaypointCoordinates(List.of(0.9, 0.0), "End")));
+		return route;
+	}
+
+	private static RouteWeatherService createService(WeatherService weatherService, int maxSamples) {
+		return new RouteWeatherService(weatherService, 25, maxSamples);
+	}
+
+	@Test
+	void samplesEvenlyByDistance() {
+		RouteData route = route();
+		double total = route.getDistance();
+
+		RouteWeatherService.RouteSamples samples = createService(mock(WeatherService.class), 400)
+				.sampleRoute(route, 25.0, null);
+
+		// Every 25 km, and the destination just past the last of them
+		assertEquals(6, samples.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i * 25_000.0, samples.distances()[i], 1e-6);
+			assertEquals(0.9 * samples.distances()[i] / total, samples.longitudes()[i], 1e-9);
+			assertEquals(START + 3600 * samples.distances()[i] / total, samples.times()[i], 1.0);
+		}
+		assertEquals(total, samples.distances()[5], 0.0);
+		assertEquals(0.9, samples.longitudes()[5], 0.0);
+		assertEquals(START + 3600, samples.times()[5]);
+	}
+
+	@Test
+	void samplesByDrivingTime() {
+		RouteWeatherService.RouteSamples samples = createService(mock(WeatherService.class), 400)
+				.sampleRoute(route(), null, 15);
+
+		assertEquals(5, samples.size());
+		assertArrayEquals(new long[] { START, START + 900, START + 1800, START + 2700, START + 3600 },
+				samples.times());
+	}
+
+	@Test
+	void spreadsOutSamplesWhenThereWouldBeTooMany() {
+		RouteWeatherService.RouteSamples samples = createService(mock(WeatherService.class), 5)
+				.sampleRoute(route(), 1.0, null);
+
+		assertEquals(5, samples.size());
+		assertEquals(0.0, samples.distances()[0], 0.0);
+		assertEquals(route().getDistance(), samples.distances()[4], 1e-6);
+	}
+
+	@Test
+	void forecastsEachSampleWhenTheRouteReachesIt() {
+		WeatherService weatherService = mock(WeatherService.class);
+		List<long[]> requestedTimes = new ArrayList<>();
+		when(weatherService.getWeatherForecastsAt(any(), any(), any())).thenAnswer(invocation -> {
+			long[] times = invocation.getArgument(2);
+			requestedTimes.add(times);
+			List<WeatherData> weather = new ArrayList<>();
+			for (long time : times) {
+				WeatherData data = new WeatherData();
+				data.setCondition("At " + time);
+				weather.add(data);
+			}
+			return weather;
+		});
+
+		List<RouteWeatherSample> timeline = createService(weatherService, 400).getWeatherTimeline(route(), null, 30);
+
+		assertEquals(1, requestedTimes.size());
+		assertArrayEquals(new long[] { START, START + 1800, START + 3600 }, requestedTimes.get(0));
+		assertEquals(3, timeline.size());
+		for (int i = 0; i < timeline.size(); i++) {
+			long time = START + i * 1800L;
+			assertEquals(Instant.ofEpochSecond(time).toString(), timeline.get(i).getTime());
+			assertEquals("At " + time, timeline.get(i).getWeather().getCondition());
+		}
+		assertEquals(0.0, timeline.get(0).getLatitude(), 0.0);
+		assertEquals(0.9, timeline.get(2).getLongitude(), 1e-9);
+	}
+
+	@Test
+	void rejectsRoutesWithoutAGeometry() {
+		RouteData route = new RouteData(RouteGeometry.builder(1, false).add(0.0, 0.0, 0).build(), 0.0, 0.0);
+		assertThrows(IllegalArgumentException.class,
+				() -> createService(mock(WeatherService.class), 400).sampleRoute(route, null, null));
+	}
+}
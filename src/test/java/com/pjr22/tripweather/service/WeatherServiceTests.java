@@ -0,0 +1,254 @@
+package com.pjr22.tripweather.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pjr22.tripweather.cache.CircuitBreaker;
+import com.pjr22.tripweather.cache.ForecastStore;
+import com.pjr22.tripweather.cache.InFlightRequestRegistry;
+import com.pjr22.tripweather.cache.PersistentWeatherCache;
+import com.pjr22.tripweather.dto.WeatherForecastRequest;
+import com.pjr22.tripweather.model.WeatherData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class WeatherServiceTests {
+
+	private static final ZoneOffset OFFSET = ZoneOffset.ofHours(-6);
+	private static final DateTimeFormatter NWS_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+
+	private HttpServer server;
+	private WeatherService service;
+	// Requests per path
+	private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+	// Cache-Control sent with forecasts, none if null
+	private volatile String forecastCacheControl = "public, max-age=3600";
+	// Status returned for points lookups instead of an answer, if not 0
+	private volatile int pointsStatus;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/points/", this::points);
+		server.createContext("/gridpoints/", this::gridpoint);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		if (service != null) {
+			service.shutdown();
+		}
+		server.stop(0);
+	}
+
+	/**
+	 * Answer like NWS with the hourly forecast URL of a gridpoint a tenth of a degree wide
+	 */
+	private void points(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+		if (pointsStatus != 0) {
+			respond(exchange, pointsStatus, "{\"status\": " + pointsStatus + "}", null);
+			return;
+		}
+		String[] point = path.substring("/points/".length()).split(",");
+		double latitude = Double.parseDouble(point[0]);
+		double longitude = Double.parseDouble(point[1]);
+		String forecastUrl = String.format(Locale.ROOT, "http://localhost:%d/gridpoints/BOU/%d,%d/forecast/hourly",
+				server.getAddress().getPort(), Math.round(latitude * 10), Math.round(longitude * 10));
+		respond(exchange, 200, "{\"properties\": {\"forecastHourly\": \"" + forecastUrl + "\"}}", null);
+	}
+
+	/**
+	 * Two days of hourly periods starting this hour, each named after the gridpoint
+	 */
+	private void gridpoint(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+		String gridpoint = path.split("/")[3];
+		OffsetDateTime start = OffsetDateTime.now(OFFSET).truncatedTo(ChronoUnit.HOURS);
+		List<String> periods = new ArrayList<>();
+		for (int i = 0; i < 48; i++) {
+			periods.add(String.format("""
+					{"startTime": "%s", "endTime": "%s", "temperature": {"value": %d}, "temperatureUnit": "F",
+					 "windSpeed": "10 mph", "windDirection": "S", "shortForecast": "%s"}""",
+					NWS_FORMAT.format(start.plusHours(i)), NWS_FORMAT.format(start.plusHours(i + 1)), 50 + i,
+					gridpoint));
+		}
+		respond(exchange, 200, "{\"properties\": {\"periods\": [" + String.join(",", periods) + "]}}",
+				forecastCacheControl);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body, String cacheControl)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/geo+json");
+		if (cacheControl != null) {
+			exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+		}
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			exchange.getResponseBody().write(bytes);
+		}
+		exchange.close();
+	}
+
+	private WeatherService createService() {
+		PersistentWeatherCache persistentCache = new PersistentWeatherCache(null, null, false, false, 60);
+		service = new WeatherService("http://localhost:" + server.getAddress().getPort(),
+				1440, 10000, 10, 4, 3000, 10000, 5, 30,
+				new ForecastStore(persistentCache, 15, 2000, 168), persistentCache, new InFlightRequestRegistry());
+		return service;
+	}
+
+	private int requestCount(String pathPrefix) {
+		return requests.entrySet().stream().filter(entry -> entry.getKey().startsWith(pathPrefix))
+				.mapToInt(entry -> entry.getValue().get()).sum();
+	}
+
+	/**
+	 * Forecast for a point two hours from now
+	 */
+	private static WeatherData forecast(WeatherService weatherService, double latitude, double longitude) {
+		OffsetDateTime target = OffsetDateTime.now(OFFSET).plusHours(2);
+		return weatherService.getWeatherForecast(latitude, longitude, target.toLocalDate().toString(),
+				target.toLocalTime().truncatedTo(ChronoUnit.MINUTES).toString());
+	}
+
+	@Test
+	void looksUpEachPointOnce() {
+		WeatherService weatherService = createService();
+
+		WeatherData first = forecast(weatherService, 39.7392, -104.9903);
+		assertNull(first.getError());
+		assertEquals("397,-1050", first.getCondition());
+		// Rounds to the same four decimal places NWS accepts
+		forecast(weatherService, 39.73921, -104.99031);
+		forecast(weatherService, 39.7392, -104.9903);
+
+		assertEquals(1, requestCount("/points/"));
+		assertEquals(1, requests.get("/points/39.7392,-104.9903").get());
+		assertEquals(1, weatherService.getCacheStats().get(0).size());
+	}
+
+	@Test
+	void sharesOneForecastBetweenThePointsOfAGridpoint() {
+		WeatherService weatherService = createService();
+
+		assertEquals("397,-1050", forecast(weatherService, 39.7392, -104.9903).getCondition());
+		assertEquals("397,-1050", forecast(weatherService, 39.7101, -104.9802).getCondition());
+		assertEquals("398,-1050", forecast(weatherService, 39.8, -104.9903).getCondition());
+		forecast(weatherService, 39.7392, -104.9903);
+
+		assertEquals(3, requestCount("/points/"));
+		assertEquals(1, requests.get("/gridpoints/BOU/397,-1050/forecast/hourly").get());
+		assertEquals(2, requestCount("/gridpoints/"));
+	}
+
+	@Test
+	void keepsForecastsAsLongAsCacheControlAllows() {
+		WeatherService weatherService = createService();
+
+		forecastCacheControl = "no-cache";
+		forecast(weatherService, 39.7392, -104.9903);
+		forecast(weatherService, 39.7392, -104.9903);
+		assertEquals(2, requestCount("/gridpoints/BOU/397,-1050/"));
+
+		// The shared cache lifetime wins over max-age
+		forecastCacheControl = "max-age=0, s-maxage=600";
+		forecast(weatherService, 39.8, -104.9903);
+		forecast(weatherService, 39.8, -104.9903);
+		assertEquals(1, requestCount("/gridpoints/BOU/398,-1050/"));
+
+		// Without caching headers the default lifetime is used
+		forecastCacheControl = null;
+		forecast(weatherService, 39.9, -104.9903);
+		forecast(weatherService, 39.9, -104.9903);
+		assertEquals(1, requestCount("/gridpoints/BOU/399,-1050/"));
+		assertEquals(2, weatherService.getForecastStoreStats().gridpoints());
+	}
+
+	@Test
+	void fetchesEachPointAndGridpointOnceForABatch() {
+		WeatherService weatherService = createService();
+		OffsetDateTime target = OffsetDateTime.now(OFFSET).plusHours(3);
+		String date = target.toLocalDate().toString();
+		String time = target.toLocalTime().truncatedTo(ChronoUnit.MINUTES).toString();
+		List<WeatherForecastRequest> batch = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			batch.add(new WeatherForecastRequest(39.7392, -104.9903, date, time));
+			batch.add(new WeatherForecastRequest(39.7101, -104.9802, date, time));
+			batch.add(new WeatherForecastRequest(40.0150, -105.2705, date, time));
+		}
+		batch.add(new WeatherForecastRequest(null, -105.0, date, time));
+
+		List<WeatherData> results = weatherService.getWeatherForecasts(batch);
+
+		assertEquals(batch.size(), results.size());
+		for (int i = 0; i < 30; i += 3) {
+			assertEquals("397,-1050", results.get(i).getCondition());
+			assertEquals("397,-1050", results.get(i + 1).getCondition());
+			assertEquals("400,-1053", results.get(i + 2).getCondition());
+		}
+		assertEquals("Invalid coordinates", results.get(30).getError());
+		assertEquals(3, requestCount("/points/"));
+		assertEquals(2, requestCount("/gridpoints/"));
+	}
+
+	@Test
+	void remembersPointsOutsideNwsCoverageForAWhile() {
+		WeatherService weatherService = createService();
+		pointsStatus = 404;
+
+		assertEquals("Unable to get forecast URL for location", forecast(weatherService, 20.0, -130.0).getError());
+		assertEquals("Unable to get forecast URL for location", forecast(weatherService, 20.0, -130.0).getError());
+		assertEquals(1, requestCount("/points/"));
+		// Points NWS does not cover say nothing about its health
+		assertEquals(CircuitBreaker.State.CLOSED, weatherService.getCircuitStats().state());
+	}
+
+	@Test
+	void stopsCallingWeatherGovWhileItIsFailing() {
+		WeatherService weatherService = createService();
+		pointsStatus = 503;
+
+		// Failures are not cached, and five in a row open the circuit
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(forecast(weatherService, 39.7392, -104.9903).getError());
+		}
+		assertEquals(5, requestCount("/points/"));
+		assertFalse(weatherService.isUpstreamAvailable());
+
+		pointsStatus = 0;
+		WeatherData rejected = forecast(weatherService, 40.0, -105.0);
+		assertEquals("Error fetching weather: weather.gov is temporarily unavailable", rejected.getError());
+		assertEquals(5, requestCount("/points/"));
+
+		// Background refreshes are skipped rather than tried against an open circuit
+		weatherService.refreshForecast("http://localhost:" + server.getAddress().getPort()
+				+ "/gridpoints/BOU/397,-1050/forecast/hourly");
+		assertEquals(0, requestCount("/gridpoints/"));
+		assertEquals(1, weatherService.getCircuitStats().rejected());
+	}
+}